@@ -0,0 +1,177 @@
+package benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * A small time-based benchmark harness. Each benchmark is warmed up, then
+ * measured for a fixed time; besides throughput it records the bytes
+ * allocated per operation by the measuring thread and the collections that
+ * happened during the measurement (the equivalent of JMH's -prof gc).
+ */
+public class Benchmark {
+
+    /** Results are folded into this field so the JIT can't drop the work **/
+    private static volatile int sink;
+
+    /**
+     * The operation being measured
+     */
+    public interface Operation {
+        /**
+         * Run the operation once
+         *
+         * @return any result of the operation, it is consumed by the harness
+         * @throws Exception if the operation fails
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * The measurement of one benchmark
+     */
+    public static class Result {
+        /** Name of the benchmark **/
+        private String name;
+        /** Number of operations measured **/
+        private long operations;
+        /** Measured time in nanoseconds **/
+        private long nanos;
+        /** Bytes allocated by the measuring thread, -1 if not supported **/
+        private long allocatedBytes;
+        /** Collections and collection time during the measurement **/
+        private long gcCount;
+        private long gcMillis;
+
+        public String getName() {
+            return name;
+        }
+
+        public double getOpsPerSecond() {
+            return operations * 1e9 / nanos;
+        }
+
+        public double getNanosPerOp() {
+            return (double) nanos / operations;
+        }
+
+        public double getBytesPerOp() {
+            return allocatedBytes < 0 ? Double.NaN : (double) allocatedBytes / operations;
+        }
+
+        public double getAllocationMBPerSecond() {
+            return allocatedBytes < 0 ? Double.NaN : allocatedBytes * 1e9 / nanos / (1024 * 1024);
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+
+        /**
+         * Header of the CSV format of results
+         */
+        public static String csvHeader() {
+            return "benchmark,ops,ops_per_s,ns_per_op,bytes_per_op,alloc_mb_per_s,gc_count,gc_ms";
+        }
+
+        public String toCsv() {
+            return String.format("%s,%d,%.3f,%.1f,%.1f,%.2f,%d,%d", name, operations,
+                    getOpsPerSecond(), getNanosPerOp(), getBytesPerOp(),
+                    getAllocationMBPerSecond(), gcCount, gcMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-55s %14.2f ops/s %14.1f ns/op %12.1f B/op %5d gc (%d ms)",
+                    name, getOpsPerSecond(), getNanosPerOp(), getBytesPerOp(), gcCount, gcMillis);
+        }
+    }
+
+    /**
+     * Run a benchmark
+     *
+     * @param name name of the benchmark
+     * @param operation the operation to measure
+     * @param warmupMillis time to run before measuring
+     * @param measureMillis time to measure for
+     * @return the measurement
+     * @throws Exception if the operation fails
+     */
+    public static Result run(String name, Operation operation, long warmupMillis,
+                             long measureMillis) throws Exception {
+        runFor(operation, warmupMillis * 1_000_000);
+
+        long gcCountBefore = totalGcCount();
+        long gcMillisBefore = totalGcMillis();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = runFor(operation, measureMillis * 1_000_000);
+        long nanos = System.nanoTime() - start;
+        long allocatedAfter = allocatedBytes();
+
+        Result result = new Result();
+        result.name = name;
+        result.operations = operations;
+        result.nanos = nanos;
+        result.allocatedBytes = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        result.gcCount = totalGcCount() - gcCountBefore;
+        result.gcMillis = totalGcMillis() - gcMillisBefore;
+        return result;
+    }
+
+    /**
+     * Run the operation in growing batches until the time is up, so reading
+     * the clock doesn't dominate fast operations
+     *
+     * @return number of operations run
+     */
+    private static long runFor(Operation operation, long nanos) throws Exception {
+        long deadline = System.nanoTime() + nanos;
+        long operations = 0;
+        int batch = 1;
+        int hash = 0;
+        do {
+            for (int i = 0; i < batch; i++) {
+                Object value = operation.run();
+                hash += value == null ? 0 : System.identityHashCode(value);
+            }
+            operations += batch;
+            if (batch < (1 << 16)) {
+                batch *= 2;
+            }
+        } while (System.nanoTime() < deadline);
+        sink += hash;
+        return operations;
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    private static long totalGcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long totalGcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+}
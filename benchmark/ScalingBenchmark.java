@@ -0,0 +1,164 @@
+package benchmark;
+
+import problem.ProblemGenerator;
+import problem.ProblemSpec;
+import problem.RTDPSolver;
+import simulator.RandomStreams;
+import simulator.Simulator;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.random.RandomGenerator;
+import java.util.stream.Stream;
+
+/**
+ * Measures how the solvers scale with the size of the problem on generated
+ * problems: once against the number of cells N (with 2 cars and 2 drivers),
+ * once against the number of car and driver combinations CT * DT (with
+ * N = 1000). Each row of the CSV output is one solve:
+ *
+ *      solver,level,N,CT,DT,load_ms,solve_ms,steps,backups,retained_mb,peak_mb
+ *
+ * where retained_mb is the heap held by the problem, simulator and solver
+ * after the solve, and peak_mb the heap peak during load and solve.
+ *
+ * The legacy solvers act on the real simulator until the goal or maxT, so
+ * maxT is capped to keep large N affordable.
+ *
+ * Usage: ScalingBenchmark [results.csv] [level] [maxT] [seed]
+ */
+public class ScalingBenchmark {
+
+    private static final int[] CELLS = {100, 1_000, 10_000, 100_000, 1_000_000};
+    private static final int[] CARS_AND_DRIVERS = {2, 5, 10, 20, 40};
+    private static final int FIXED_N = 1_000;
+    private static final String[] SOLVERS = {"rtdp", "lrtdp"};
+
+    public static void main(String[] args) throws Exception {
+        Path csvFile = Paths.get(args.length > 0 ? args[0] : "scaling.csv");
+        int level = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int maxT = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+
+        Path dir = Files.createTempDirectory("scaling");
+        List<String> rows = new ArrayList<>();
+        try {
+            for (int n : CELLS) {
+                rows.addAll(measure(dir, level, n, 2, 2, maxT, seed));
+            }
+            for (int k : CARS_AND_DRIVERS) {
+                rows.addAll(measure(dir, level, FIXED_N, k, k, maxT, seed));
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(dir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(dir);
+        }
+
+        try (BufferedWriter output = Files.newBufferedWriter(csvFile)) {
+            output.write("solver,level,N,CT,DT,load_ms,solve_ms,steps,backups,retained_mb,peak_mb\n");
+            for (String row : rows) {
+                output.write(row);
+                output.write("\n");
+            }
+        }
+        System.out.println("ScalingBenchmark: results in " + csvFile);
+    }
+
+    /**
+     * Generate one problem and solve it with every solver
+     *
+     * @return one CSV row per solver
+     */
+    private static List<String> measure(Path dir, int level, int n, int ct, int dt,
+                                        int maxT, long seed) throws IOException {
+        Path file = dir.resolve("input_lvl" + level + "_" + n + "_" + ct + "x" + dt + ".txt");
+        ProblemGenerator generator = new ProblemGenerator(level, n, ct, dt);
+        generator.setMaxT(maxT);
+        generator.generate(file, seed);
+
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < SOLVERS.length; i++) {
+            String row = solve(file, SOLVERS[i], new RandomStreams(seed).stream(i));
+            System.out.println(row);
+            rows.add(row);
+        }
+        Files.delete(file);
+        return rows;
+    }
+
+    /**
+     * Load and solve a problem. Kept in its own frame so nothing of a solve
+     * is still reachable when the next one takes its heap baseline.
+     *
+     * @return the CSV row of the solve
+     */
+    private static String solve(Path file, String solverName, RandomGenerator random)
+            throws IOException {
+        long baseline = usedHeapAfterGc();
+        resetPeaks();
+
+        long start = System.nanoTime();
+        ProblemSpec ps = new ProblemSpec(file.toString());
+        long loaded = System.nanoTime();
+        Simulator simulator = new Simulator(ps, random);
+        RTDPSolver solver = new RTDPSolver(ps, simulator, simulator.getCurrentState());
+        if (solverName.equals("lrtdp")) {
+            solver.runLabeledRTDP();
+        } else {
+            solver.runRTDP();
+        }
+        long solved = System.nanoTime();
+        long peak = peakHeap();
+        long retained = usedHeapAfterGc() - baseline;
+        Reference.reachabilityFence(solver);
+
+        int steps = simulator.isGoalState(simulator.getCurrentState()) ? simulator.getSteps() : -1;
+        return String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%.2f,%.2f,%d,%d,%.2f,%.2f",
+                solverName, ps.getLevel().getLevelNumber(), ps.getN(), ps.getCT(), ps.getDT(),
+                (loaded - start) / 1e6, (solved - loaded) / 1e6, steps, solver.getBackups(),
+                retained / 1048576.0, peak / 1048576.0);
+    }
+
+    private static long usedHeapAfterGc() {
+        System.gc();
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
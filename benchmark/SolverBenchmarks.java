@@ -0,0 +1,122 @@
+package benchmark;
+
+import problem.Action;
+import problem.ActionType;
+import problem.ProblemSpec;
+import problem.RTDPSolver;
+import simulator.RandomStreams;
+import simulator.Simulator;
+import simulator.State;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of the simulator and solver hot paths on every bundled input
+ * file (input/input_lvl*.txt):
+ *
+ *  - ProblemSpec parsing
+ *  - Simulator.getMoveProbs
+ *  - Simulator.step on a headless simulator
+ *  - RTDPSolver.computeActionValue and getGreedyAction in the start state
+ *  - a full runRTDP and runLabeledRTDP
+ *
+ * Usage: SolverBenchmarks [inputDir] [warmupMillis] [measureMillis] [results.csv]
+ */
+public class SolverBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        Path inputDir = Paths.get(args.length > 0 ? args[0] : "input");
+        long warmupMillis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        long measureMillis = args.length > 2 ? Long.parseLong(args[2]) : 2000;
+        Path csvFile = args.length > 3 ? Paths.get(args[3]) : null;
+
+        List<Path> inputs;
+        try (Stream<Path> files = Files.list(inputDir)) {
+            inputs = files.filter(p -> p.getFileName().toString().matches("input_lvl.*\\.txt"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        List<Benchmark.Result> results = new ArrayList<>();
+        for (Path input : inputs) {
+            String file = input.toString();
+            String name = input.getFileName().toString().replace(".txt", "");
+            ProblemSpec ps = new ProblemSpec(file);
+            RandomStreams streams = new RandomStreams(1);
+
+            results.add(report(Benchmark.run(name + " ProblemSpec.load",
+                    () -> new ProblemSpec(file), warmupMillis, measureMillis)));
+
+            Simulator simulator = new Simulator(ps, streams.stream(0));
+            State start = simulator.getCurrentState();
+            results.add(report(Benchmark.run(name + " Simulator.getMoveProbs",
+                    () -> simulator.getMoveProbs(start), warmupMillis, measureMillis)));
+
+            Action move = new Action(ActionType.MOVE);
+            results.add(report(Benchmark.run(name + " Simulator.step",
+                    () -> {
+                        State next = simulator.step(move);
+                        if (next == null || simulator.isGoalState(next)) {
+                            simulator.reset();
+                        }
+                        return next;
+                    }, warmupMillis, measureMillis)));
+
+            Simulator solverSimulator = new Simulator(ps, streams.stream(1));
+            RTDPSolver solver = new RTDPSolver(ps, solverSimulator, start);
+            results.add(report(Benchmark.run(name + " RTDPSolver.computeActionValue",
+                    () -> solver.computeActionValue(start, move), warmupMillis, measureMillis)));
+            results.add(report(Benchmark.run(name + " RTDPSolver.getGreedyAction",
+                    () -> solver.getGreedyAction(start), warmupMillis, measureMillis)));
+
+            long[] run = new long[1];
+            results.add(report(Benchmark.run(name + " RTDPSolver.runRTDP",
+                    () -> {
+                        Simulator s = new Simulator(ps, streams.stream(2 + run[0]++));
+                        new RTDPSolver(ps, s, s.getCurrentState()).runRTDP();
+                        return s;
+                    }, warmupMillis, measureMillis)));
+            results.add(report(Benchmark.run(name + " RTDPSolver.runLabeledRTDP",
+                    () -> {
+                        Simulator s = new Simulator(ps, streams.stream(2 + run[0]++));
+                        new RTDPSolver(ps, s, s.getCurrentState()).runLabeledRTDP();
+                        return s;
+                    }, warmupMillis, measureMillis)));
+        }
+
+        if (csvFile != null) {
+            writeCsv(results, csvFile);
+        }
+    }
+
+    private static Benchmark.Result report(Benchmark.Result result) {
+        System.out.println(result);
+        return result;
+    }
+
+    /**
+     * Write benchmark results as CSV
+     *
+     * @param results the results
+     * @param csvFile the file to write
+     * @throws IOException if the file can't be written
+     */
+    static void writeCsv(List<Benchmark.Result> results, Path csvFile) throws IOException {
+        try (BufferedWriter output = Files.newBufferedWriter(csvFile)) {
+            output.write(Benchmark.Result.csvHeader());
+            output.write("\n");
+            for (Benchmark.Result result : results) {
+                output.write(result.toCsv());
+                output.write("\n");
+            }
+        }
+    }
+}
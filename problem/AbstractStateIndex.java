@@ -0,0 +1,157 @@
+package problem;
+
+import simulator.State;
+
+import java.util.Arrays;
+
+/**
+ * A state index that leaves out what doesn't matter at the problem's level,
+ * so that a solver keying its tables by it keeps fewer values.
+ *
+ * Fuel is left out when the level neither consumes nor adds fuel (level 1),
+ * the tire pressure when no action changes it (level 1). These states
+ * always have full fuel and pressure, so nothing is lost.
+ *
+ * Optionally, fuel values are grouped into buckets that agree on whether a
+ * move is possible for every terrain, car and pressure: the buckets are the
+ * ranges between consecutive fuel consumptions. This is lossy, states in a
+ * bucket share a value although the higher fuel lasts longer, but it shrinks
+ * the fuel dimension from 51 values to the number of distinct consumptions.
+ *
+ *      key = ((((pos - 1) * CT + car) * DT + driver) * 4 + tire) * F + fuel) * P + pressure
+ *
+ * where F and P are 1 for a dimension left out.
+ */
+public class AbstractStateIndex extends StateIndex {
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** Number of car types and drivers **/
+    private int CT;
+    private int DT;
+    /** Number of fuel values and pressures in the key, 1 if left out **/
+    private int fuelLevels;
+    private int pressureLevels;
+    /** The fuel value in the key of each fuel, null unless fuel is bucketed **/
+    private int[] fuelBucket;
+    /** The lowest fuel of each fuel value in the key, null if fuel is kept as is **/
+    private int[] bucketFuel;
+
+    /**
+     * Construct the abstract state index for a problem
+     *
+     * @param ps the problem spec
+     * @param fuelBuckets whether to group fuel values by move feasibility
+     */
+    public AbstractStateIndex(ProblemSpec ps, boolean fuelBuckets) {
+        super(ps);
+        this.ps = ps;
+        this.CT = ps.getCT();
+        this.DT = ps.getDT();
+        Level level = ps.getLevel();
+
+        boolean fuelChanges = level.getLevelNumber() > 1
+                || level.isValidActionForLevel(ActionType.ADD_FUEL)
+                || level.isValidActionForLevel(ActionType.CHANGE_TIRE_FUEL_PRESSURE);
+        boolean pressureChanges = level.isValidActionForLevel(ActionType.CHANGE_PRESSURE)
+                || level.isValidActionForLevel(ActionType.CHANGE_TIRE_FUEL_PRESSURE);
+        this.pressureLevels = pressureChanges ? ProblemSpec.TIRE_PRESSURE_LEVELS : 1;
+
+        if (!fuelChanges) {
+            fuelLevels = 1;
+            this.bucketFuel = new int[] {ProblemSpec.FUEL_MAX};
+        } else if (!fuelBuckets) {
+            fuelLevels = FUEL_LEVELS;
+        } else {
+            // a new bucket starts at every fuel consumption
+            boolean[] starts = new boolean[ProblemSpec.FUEL_MAX + 1];
+            starts[ProblemSpec.FUEL_MIN] = true;
+            for (int consumption : ps.getFuelConsumptions()) {
+                if (consumption <= ProblemSpec.FUEL_MAX) {
+                    starts[consumption] = true;
+                }
+            }
+            fuelBucket = new int[FUEL_LEVELS];
+            int[] lowest = new int[FUEL_LEVELS];
+            int bucket = -1;
+            for (int fuel = ProblemSpec.FUEL_MIN; fuel <= ProblemSpec.FUEL_MAX; fuel++) {
+                if (starts[fuel]) {
+                    lowest[++bucket] = fuel;
+                }
+                fuelBucket[fuel - ProblemSpec.FUEL_MIN] = bucket;
+            }
+            fuelLevels = bucket + 1;
+            this.bucketFuel = Arrays.copyOf(lowest, fuelLevels);
+        }
+    }
+
+    /**
+     * Get the number of fuel values in the key
+     *
+     * @return 1 if fuel is left out, the number of buckets if fuel is
+     *      bucketed, 51 otherwise
+     */
+    public int getFuelLevels() {
+        return fuelLevels;
+    }
+
+    /**
+     * Get the number of tire pressures in the key
+     *
+     * @return 1 if the pressure is left out, 3 otherwise
+     */
+    public int getPressureLevels() {
+        return pressureLevels;
+    }
+
+    @Override
+    public long size() {
+        return (long) ps.getN() * CT * DT * ProblemSpec.NUM_TYRE_MODELS * fuelLevels * pressureLevels;
+    }
+
+    @Override
+    public long keyOf(State state) {
+        long key = state.getPos() - 1;
+        key = key * CT + state.getCarIndex(ps);
+        key = key * DT + state.getDriverIndex(ps);
+        key = key * ProblemSpec.NUM_TYRE_MODELS + state.getTireIndex(ps);
+        key = key * fuelLevels + fuelValueOf(state.getFuel());
+        key = key * pressureLevels + (pressureLevels == 1 ? 0 : state.getTirePressure().ordinal());
+        return key;
+    }
+
+    /**
+     * Get a state with a given key. Fuel and pressure that are left out are
+     * full, bucketed fuel is the lowest fuel of the bucket.
+     *
+     * @param key the key, in [0, size())
+     * @return a state with the key
+     */
+    @Override
+    public State stateOf(long key) {
+        TirePressure pressure = pressureLevels == 1 ? TirePressure.ONE_HUNDRED_PERCENT
+                : TirePressure.values()[(int) (key % pressureLevels)];
+        key /= pressureLevels;
+        int fuelValue = (int) (key % fuelLevels);
+        int fuel = bucketFuel == null ? fuelValue + ProblemSpec.FUEL_MIN : bucketFuel[fuelValue];
+        key /= fuelLevels;
+        Tire tire = ps.getTireOrder().get((int) (key % ProblemSpec.NUM_TYRE_MODELS));
+        key /= ProblemSpec.NUM_TYRE_MODELS;
+        String driver = ps.getDriverOrder().get((int) (key % DT));
+        key /= DT;
+        String car = ps.getCarOrder().get((int) (key % CT));
+        key /= CT;
+        int pos = (int) key + 1;
+        return new State(pos, false, false, car, fuel, pressure, driver, tire);
+    }
+
+    private int fuelValueOf(int fuel) {
+        if (fuelLevels == 1) {
+            return 0;
+        }
+        if (fuelBucket != null) {
+            return fuelBucket[fuel - ProblemSpec.FUEL_MIN];
+        }
+        return fuel - ProblemSpec.FUEL_MIN;
+    }
+}
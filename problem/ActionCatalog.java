@@ -0,0 +1,266 @@
+package problem;
+
+import simulator.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every concrete action of a problem's level, built once per problem and
+ * numbered 0..size()-1. Solvers, the simulator and policy tables refer to
+ * actions by these codes, so listing the actions of a state allocates
+ * nothing: the codes are written into an array, and the Action of a code,
+ * with its text, is built once here.
+ *
+ * The codes follow the level's action types in order, and within a type
+ * the order of the car, driver and tire lists of the input, fuel amounts
+ * up and pressures by increasing ordinal. This is the order solvers break
+ * ties in.
+ */
+public class ActionCatalog {
+
+    /** Parameter value of an action that doesn't have the parameter **/
+    private static final int NONE = -1;
+    /** Reward of each step an action other than MOVE takes **/
+    private static final double REWARD_PER_STEP = -5.0;
+
+    /** The action of each code **/
+    private Action[] actions;
+    /** The type of each code **/
+    private ActionType[] types;
+    /** Car, driver and tire index in the input order, fuel and pressure ordinal of each code **/
+    private int[] cars;
+    private int[] drivers;
+    private int[] tires;
+    private int[] fuels;
+    private int[] pressures;
+    /** Number of steps each code takes **/
+    private int[] durations;
+    /** R(s, a) of each code in a non-goal state, NaN for MOVE, which depends on the state **/
+    private double[] rewards;
+    /** Code of MOVE, -1 if the level has none **/
+    private int moveCode = NONE;
+    /** Codes by action text, to find the code of an Action built elsewhere **/
+    private Map<String, Integer> codes = new HashMap<>();
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+
+    /**
+     * Build the catalogue of a problem
+     *
+     * @param ps the problem spec, with its level and input orders loaded
+     */
+    public ActionCatalog(ProblemSpec ps) {
+        this.ps = ps;
+        List<Action> list = new ArrayList<>();
+        for (ActionType actionType : ps.getLevel().getAvailableActions()) {
+            switch (actionType) {
+                case MOVE:
+                    list.add(new Action(actionType));
+                    break;
+                case CHANGE_CAR:
+                    for (String car : ps.getCarOrder()) {
+                        list.add(new Action(actionType, car));
+                    }
+                    break;
+                case CHANGE_DRIVER:
+                    for (String driver : ps.getDriverOrder()) {
+                        list.add(new Action(actionType, driver));
+                    }
+                    break;
+                case CHANGE_TIRES:
+                    for (Tire tire : ps.getTireOrder()) {
+                        list.add(new Action(actionType, tire));
+                    }
+                    break;
+                case ADD_FUEL:
+                    for (int fuel = 10; fuel <= ProblemSpec.FUEL_MAX; fuel += 10) {
+                        list.add(new Action(actionType, fuel));
+                    }
+                    break;
+                case CHANGE_PRESSURE:
+                    for (TirePressure pressure : TirePressure.values()) {
+                        list.add(new Action(actionType, pressure));
+                    }
+                    break;
+                case CHANGE_CAR_AND_DRIVER:
+                    for (String car : ps.getCarOrder()) {
+                        for (String driver : ps.getDriverOrder()) {
+                            list.add(new Action(actionType, car, driver));
+                        }
+                    }
+                    break;
+                case CHANGE_TIRE_FUEL_PRESSURE:
+                    // by fuel amount first, the reward only depends on it
+                    for (int fuel = 0; fuel <= ProblemSpec.FUEL_MAX; fuel += 10) {
+                        for (Tire tire : ps.getTireOrder()) {
+                            for (TirePressure pressure : TirePressure.values()) {
+                                list.add(new Action(actionType, tire, fuel, pressure));
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        int n = list.size();
+        actions = list.toArray(new Action[0]);
+        types = new ActionType[n];
+        cars = new int[n];
+        drivers = new int[n];
+        tires = new int[n];
+        fuels = new int[n];
+        pressures = new int[n];
+        durations = new int[n];
+        rewards = new double[n];
+        for (int code = 0; code < n; code++) {
+            Action action = actions[code];
+            types[code] = action.getActionType();
+            cars[code] = action.getCarType() == null ? NONE : ps.getCarIndex(action.getCarType());
+            drivers[code] = action.getDriverType() == null ? NONE : ps.getDriverIndex(action.getDriverType());
+            tires[code] = action.getTireModel() == null ? NONE : ps.getTireIndex(action.getTireModel());
+            fuels[code] = action.getFuel();
+            pressures[code] = action.getTirePressure() == null ? NONE : action.getTirePressure().ordinal();
+            durations[code] = durationOf(action);
+            rewards[code] = types[code] == ActionType.MOVE ? Double.NaN : REWARD_PER_STEP * durations[code];
+            if (types[code] == ActionType.MOVE) {
+                moveCode = code;
+            }
+            codes.put(action.getText(), code);
+        }
+    }
+
+    /**
+     * Get the number of steps an action takes. Refuelling, A5 and A8, takes
+     * one step per 10 units of fuel started and at least one step, so A8
+     * without fuel takes as long as changing the tires. Any other action
+     * takes one step.
+     *
+     * @param action the action
+     * @return number of steps
+     */
+    public static int durationOf(Action action) {
+        if (action.getActionType() == ActionType.ADD_FUEL
+                || action.getActionType() == ActionType.CHANGE_TIRE_FUEL_PRESSURE) {
+            return Math.max(1, (int) Math.ceil(action.getFuel() / 10.0));
+        }
+        return 1;
+    }
+
+    /**
+     * Get the number of actions
+     *
+     * @return number of codes
+     */
+    public int size() {
+        return actions.length;
+    }
+
+    public Action getAction(int code) {
+        return actions[code];
+    }
+
+    public ActionType getType(int code) {
+        return types[code];
+    }
+
+    public int getDuration(int code) {
+        return durations[code];
+    }
+
+    /**
+     * Get the reward of an action other than MOVE in a non-goal state, -5
+     * per step the action takes. Changing the car, driver, tires or pressure
+     * costs -5, refuelling -5 per 10 units of fuel.
+     *
+     * @param code the code
+     * @return the reward, NaN for MOVE, see MoveModel.getMoveReward
+     */
+    public double getReward(int code) {
+        return rewards[code];
+    }
+
+    /**
+     * Get the code of MOVE
+     *
+     * @return the code, -1 if the level has no MOVE
+     */
+    public int getMoveCode() {
+        return moveCode;
+    }
+
+    /**
+     * Get the code of an action
+     *
+     * @param action the action, from this catalogue or built elsewhere
+     * @return the code
+     * @throws IllegalArgumentException if the action is not an action of the level
+     */
+    public int codeOf(Action action) {
+        Integer code = codes.get(action.getText());
+        if (code == null) {
+            throw new IllegalArgumentException("Invalid action for the level: " + action.getText());
+        }
+        return code;
+    }
+
+    /**
+     * Get every action that can be performed in a state. Actions that change
+     * nothing, e.g. changing to the current car, and refuelling past the
+     * maximum fuel are left out.
+     *
+     * @param state the state
+     * @param canMove whether to include MOVE, e.g. false without enough fuel to move
+     * @param codes receives the codes in code order, at least size() long
+     * @return the number of codes written
+     */
+    public int getActions(State state, boolean canMove, int[] codes) {
+        int car = state.getCarIndex(ps);
+        int driver = state.getDriverIndex(ps);
+        int tire = state.getTireIndex(ps);
+        int fuel = state.getFuel();
+        int pressure = state.getTirePressure().ordinal();
+        int count = 0;
+        for (int code = 0; code < actions.length; code++) {
+            boolean applicable;
+            switch (types[code]) {
+                case MOVE:
+                    applicable = canMove;
+                    break;
+                case CHANGE_CAR:
+                    applicable = cars[code] != car;
+                    break;
+                case CHANGE_DRIVER:
+                    applicable = drivers[code] != driver;
+                    break;
+                case CHANGE_TIRES:
+                    applicable = tires[code] != tire;
+                    break;
+                case ADD_FUEL:
+                    applicable = fuel + fuels[code] <= ProblemSpec.FUEL_MAX;
+                    break;
+                case CHANGE_PRESSURE:
+                    applicable = pressures[code] != pressure;
+                    break;
+                case CHANGE_CAR_AND_DRIVER:
+                    applicable = cars[code] != car || drivers[code] != driver;
+                    break;
+                case CHANGE_TIRE_FUEL_PRESSURE:
+                    applicable = fuel + fuels[code] <= ProblemSpec.FUEL_MAX
+                            && (fuels[code] > 0 || tires[code] != tire || pressures[code] != pressure);
+                    break;
+                default:
+                    applicable = false;
+                    break;
+            }
+            if (applicable) {
+                codes[count++] = code;
+            }
+        }
+        return count;
+    }
+}
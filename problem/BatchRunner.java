@@ -0,0 +1,386 @@
+package problem;
+
+import simulator.RandomStreams;
+import simulator.Simulator;
+import simulator.State;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Solves a batch of problem files concurrently.
+ *
+ * Inputs are given either as a directory (every *.txt file in it) or as a
+ * manifest file listing one input path per line. Files with identical content
+ * are only solved once, the output of the first one is copied for the others.
+ * Inputs of different content with the same file name get the start of their
+ * content hash in the output file name.
+ * Solves run headless on a bounded executor and a summary CSV is written with
+ * one row per input file.
+ */
+public class BatchRunner {
+
+    /** Rough heap needed by a single solve, used to bound the number of threads **/
+    public static final long MEMORY_PER_SOLVE = 64L * 1024 * 1024;
+
+    /** Directory the output files are written to **/
+    private Path outputDir;
+    /** Whether to run labeled RTDP (true) or plain RTDP (false) **/
+    private boolean labeled;
+    /** Number of solves running at the same time **/
+    private int threads;
+    /** Random streams, the stream of a solve is picked by the input's hash **/
+    private RandomStreams streams;
+
+    /**
+     * The outcome of solving one input file
+     */
+    public static class Result {
+        /** The input file **/
+        private Path input;
+        /** Hex SHA-256 of the input file content **/
+        private String hash;
+        /** The output file **/
+        private Path output;
+        /** Level and number of cells of the problem **/
+        private int level;
+        private int N;
+        /** Steps taken to reach the goal, -1 if not reached **/
+        private int steps = -1;
+        /** Wall time of the solve in milliseconds **/
+        private long wallMillis;
+        /** Bellman backups performed by the solver **/
+        private long backups;
+        /** Input file this one is a duplicate of, null if solved itself **/
+        private Path duplicateOf;
+        /** Error message if the solve failed, null otherwise **/
+        private String error;
+
+        private Result(Path input, String hash, Path output) {
+            this.input = input;
+            this.hash = hash;
+            this.output = output;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        public int getSteps() {
+            return steps;
+        }
+
+        public long getWallMillis() {
+            return wallMillis;
+        }
+
+        public long getBackups() {
+            return backups;
+        }
+
+        public Path getDuplicateOf() {
+            return duplicateOf;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Construct a batch runner
+     *
+     * @param outputDir directory to write output files to
+     * @param labeled true to run labeled RTDP, false for plain RTDP
+     * @param threads number of solves to run concurrently
+     * @param seed the master seed, a solve's result only depends on it and
+     *             the input's content
+     */
+    public BatchRunner(Path outputDir, boolean labeled, int threads, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.outputDir = outputDir;
+        this.labeled = labeled;
+        this.threads = threads;
+        this.streams = new RandomStreams(seed);
+    }
+
+    /**
+     * Default thread count, bounded by both the available cores and the heap
+     * available for concurrent solves.
+     *
+     * @return number of threads to use
+     */
+    public static int defaultThreads() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        long byMemory = Runtime.getRuntime().maxMemory() / MEMORY_PER_SOLVE;
+        return (int) Math.max(1, Math.min(cores, byMemory));
+    }
+
+    /**
+     * List the input files of a batch.
+     *
+     * @param source a directory of *.txt input files, or a manifest file with
+     *               one input path per line (blank lines and lines starting
+     *               with # are ignored, relative paths are resolved against
+     *               the manifest's directory)
+     * @return the input files in order
+     * @throws IOException if the source can't be read
+     */
+    public static List<Path> listInputs(Path source) throws IOException {
+        if (Files.isDirectory(source)) {
+            try (Stream<Path> files = Files.list(source)) {
+                return files.filter(p -> p.getFileName().toString().endsWith(".txt"))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+        }
+        Path base = source.toAbsolutePath().getParent();
+        List<Path> inputs = new ArrayList<>();
+        for (String line : Files.readAllLines(source)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            inputs.add(base.resolve(line));
+        }
+        return inputs;
+    }
+
+    /**
+     * Solve all given input files.
+     *
+     * @param inputs the input files
+     * @return one result per input file, in input order
+     * @throws IOException if the output directory can't be created
+     * @throws InterruptedException if interrupted while waiting for solves
+     */
+    public List<Result> run(List<Path> inputs) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 2),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            // 1. hash every input in parallel
+            List<Future<String>> hashFutures = new ArrayList<>();
+            for (Path input : inputs) {
+                hashFutures.add(executor.submit(() -> hashFile(input)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                Path input = inputs.get(i);
+                Result result = new Result(input, null, null);
+                try {
+                    result.hash = hashFutures.get(i).get();
+                } catch (ExecutionException e) {
+                    result.error = "Cannot read input: " + e.getCause().getMessage();
+                }
+                results.add(result);
+            }
+            // inputs of different content with the same file name, e.g. in
+            // different directories, must not write the same output file
+            Map<String, Set<String>> hashesByName = new HashMap<>();
+            for (Result result : results) {
+                hashesByName.computeIfAbsent(outputName(result.input), name -> new HashSet<>())
+                        .add(result.hash);
+            }
+            for (Result result : results) {
+                String name = outputName(result.input);
+                if (hashesByName.get(name).size() > 1 && result.hash != null) {
+                    name = outputName(result.input, result.hash);
+                }
+                result.output = outputDir.resolve(name);
+            }
+
+            // 2. solve each distinct content once
+            Map<String, Result> primaries = new LinkedHashMap<>();
+            for (Result result : results) {
+                if (result.error == null) {
+                    Result primary = primaries.putIfAbsent(result.hash, result);
+                    if (primary != null) {
+                        result.duplicateOf = primary.input;
+                    }
+                }
+            }
+            Map<Result, Future<?>> solves = new LinkedHashMap<>();
+            for (Result primary : primaries.values()) {
+                solves.put(primary, executor.submit(() -> solve(primary)));
+            }
+            for (Map.Entry<Result, Future<?>> solve : solves.entrySet()) {
+                try {
+                    solve.getValue().get();
+                } catch (ExecutionException e) {
+                    solve.getKey().error = String.valueOf(e.getCause());
+                }
+            }
+
+            // 3. duplicates share the result of their primary
+            for (Result result : results) {
+                if (result.duplicateOf == null) {
+                    continue;
+                }
+                Result primary = primaries.get(result.hash);
+                result.level = primary.level;
+                result.N = primary.N;
+                result.steps = primary.steps;
+                result.wallMillis = primary.wallMillis;
+                result.backups = primary.backups;
+                result.error = primary.error;
+                if (primary.error == null && Files.exists(primary.output)
+                        && !primary.output.equals(result.output)) {
+                    Files.copy(primary.output, result.output, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Solve a single input file, filling in the given result
+     *
+     * @param result the result for the input file
+     * @return null
+     * @throws IOException if the input can't be loaded
+     */
+    private Void solve(Result result) throws IOException {
+        long start = System.nanoTime();
+        ProblemSpec ps = new ProblemSpec(result.input.toString());
+        result.level = ps.getLevel().getLevelNumber();
+        result.N = ps.getN();
+        Simulator simulator = new Simulator(ps, result.output.toString(), false);
+        simulator.setRandom(streams.stream(Long.parseUnsignedLong(result.hash.substring(0, 16), 16)));
+        State initialState = simulator.getCurrentState();
+        RTDPSolver solver = new RTDPSolver(ps, simulator, initialState);
+        if (labeled) {
+            solver.runLabeledRTDP();
+        } else {
+            solver.runRTDP();
+        }
+        if (simulator.isGoalState(simulator.getCurrentState())) {
+            result.steps = simulator.getSteps();
+        }
+        result.backups = solver.getBackups();
+        result.wallMillis = (System.nanoTime() - start) / 1_000_000;
+        return null;
+    }
+
+    /**
+     * Write the summary CSV for a batch
+     *
+     * @param results the batch results
+     * @param csvFile the file to write
+     * @throws IOException if the file can't be written
+     */
+    public static void writeSummary(List<Result> results, Path csvFile) throws IOException {
+        try (BufferedWriter output = Files.newBufferedWriter(csvFile)) {
+            output.write("input,hash,level,N,steps,wall_ms,backups,duplicate_of,error\n");
+            for (Result r : results) {
+                output.write(r.input + "," + (r.hash == null ? "" : r.hash) + ","
+                        + r.level + "," + r.N + "," + r.steps + "," + r.wallMillis + ","
+                        + r.backups + "," + (r.duplicateOf == null ? "" : r.duplicateOf) + ","
+                        + (r.error == null ? "" : r.error.replace(',', ';').replace('\n', ' '))
+                        + "\n");
+            }
+        }
+    }
+
+    /**
+     * Name of the output file for an input file, input_lvl1_4.txt becomes
+     * output_lvl1_4.txt
+     */
+    static String outputName(Path input) {
+        String name = input.getFileName().toString();
+        if (name.startsWith("input")) {
+            return "output" + name.substring("input".length());
+        }
+        return "output_" + name;
+    }
+
+    /**
+     * Name of the output file for an input file whose name is shared with
+     * an input of different content. The start of the content hash is added,
+     * input_lvl1_4.txt becomes output_lvl1_4_<hash>.txt
+     */
+    static String outputName(Path input, String hash) {
+        String name = outputName(input);
+        int dot = name.lastIndexOf('.');
+        String suffix = "_" + hash.substring(0, 16);
+        return dot < 0 ? name + suffix : name.substring(0, dot) + suffix + name.substring(dot);
+    }
+
+    private static String hashFile(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(Files.readAllBytes(file));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : hash) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Usage: BatchRunner inputDirOrManifest outputDir [summary.csv] [rtdp|lrtdp] [seed]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: BatchRunner inputDirOrManifest outputDir [summary.csv] [rtdp|lrtdp] [seed]");
+            System.exit(1);
+        }
+        Path source = Paths.get(args[0]);
+        Path outputDir = Paths.get(args[1]);
+        Path summary = args.length > 2 ? Paths.get(args[2]) : outputDir.resolve("summary.csv");
+        boolean labeled = args.length <= 3 || !args[3].equalsIgnoreCase("rtdp");
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+
+        try {
+            List<Path> inputs = listInputs(source);
+            BatchRunner runner = new BatchRunner(outputDir, labeled, defaultThreads(), seed);
+            List<Result> results = runner.run(inputs);
+            writeSummary(results, summary);
+            System.out.println("BatchRunner: solved " + inputs.size() + " inputs, summary in " + summary);
+        } catch (IOException e) {
+            System.out.println("IO Exception occurred: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+}
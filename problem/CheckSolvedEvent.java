@@ -0,0 +1,32 @@
+package problem;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of checking whether a state is solved
+ */
+@Name("rtdp.CheckSolved")
+@Label("Check Solved")
+@Category({"RTDP", "Solver"})
+@Description("A check whether a state's value has converged")
+@StackTrace(false)
+class CheckSolvedEvent extends jdk.jfr.Event {
+
+    @Label("Position")
+    int position;
+
+    @Label("Residual")
+    @Description("Change of the state's value under the greedy action")
+    double residual;
+
+    @Label("Solved")
+    boolean solved;
+
+    @Label("Backups")
+    @Description("Bellman backups performed by the solver so far")
+    long backups;
+}
@@ -0,0 +1,157 @@
+package problem;
+
+import simulator.Simulator;
+import simulator.State;
+import simulator.Transition;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A fixed policy stored as a table over every non-goal state it can reach
+ * from the start state. The table is immutable, so a compiled policy can be
+ * shared between threads even if the policy it was compiled from can't.
+ */
+public class CompiledPolicy implements Policy {
+
+    /** The state index the keys belong to **/
+    private StateIndex index;
+    /** Sorted keys of the states covered by the policy **/
+    private long[] keys;
+    /** The code of the action for each key in the problem's ActionCatalog **/
+    private int[] actions;
+    /** The actions of the problem's level **/
+    private ActionCatalog catalog;
+
+    private CompiledPolicy(StateIndex index, long[] keys, int[] actions, ActionCatalog catalog) {
+        this.index = index;
+        this.keys = keys;
+        this.actions = actions;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Compile a policy by following it from the start state through every
+     * possible transition. The policy is only called from the calling thread.
+     *
+     * @param ps the problem spec
+     * @param policy the policy to compile
+     * @return the compiled policy
+     */
+    public static CompiledPolicy compile(ProblemSpec ps, Policy policy) {
+        StateIndex index = new StateIndex(ps);
+        Simulator model = new Simulator(ps);
+        ActionCatalog catalog = ps.getActionCatalog();
+        Map<Long, Integer> table = new HashMap<>();
+        ArrayDeque<State> queue = new ArrayDeque<>();
+        State start = model.getCurrentState();
+        table.put(index.keyOf(start), null);
+        queue.add(start);
+
+        while (!queue.isEmpty()) {
+            State state = queue.poll();
+            Action action = policy.getAction(state);
+            if (action == null) {
+                throw new IllegalStateException("Policy has no action for " + state);
+            }
+            int code = catalog.codeOf(action);
+            table.put(index.keyOf(state), code);
+            for (Transition t : model.getTransitions(state, code)) {
+                State next = t.getNextState();
+                if (model.isGoalState(next)) {
+                    continue;
+                }
+                if (!table.containsKey(index.keyOf(next))) {
+                    table.put(index.keyOf(next), null);
+                    queue.add(next);
+                }
+            }
+        }
+
+        long[] keys = new long[table.size()];
+        int i = 0;
+        for (Long key : table.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        int[] actions = new int[keys.length];
+        for (i = 0; i < keys.length; i++) {
+            actions[i] = table.get(keys[i]);
+        }
+        return new CompiledPolicy(index, keys, actions, catalog);
+    }
+
+    @Override
+    public Action getAction(State state) {
+        return catalog.getAction(getActionCode(state));
+    }
+
+    /**
+     * Get the code of the action to perform in a state
+     *
+     * @param state the current state (not a goal state)
+     * @return the code of the action in the problem's ActionCatalog
+     */
+    public int getActionCode(State state) {
+        int i = indexOf(state);
+        if (i < 0) {
+            throw new IllegalArgumentException("State not covered by policy: " + state);
+        }
+        return actions[i];
+    }
+
+    /**
+     * Get the position of a state in the policy table
+     *
+     * @param state the state
+     * @return the position, or a negative number if the state isn't covered
+     */
+    public int indexOf(State state) {
+        return Arrays.binarySearch(keys, index.keyOf(state));
+    }
+
+    /**
+     * Get the number of states covered by the policy
+     *
+     * @return number of states
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Get the state at a position of the policy table
+     *
+     * @param i the position, in [0, size())
+     * @return the state
+     */
+    public State getState(int i) {
+        return index.stateOf(keys[i]);
+    }
+
+    /**
+     * Get the action at a position of the policy table
+     *
+     * @param i the position, in [0, size())
+     * @return the action
+     */
+    public Action getAction(int i) {
+        return catalog.getAction(actions[i]);
+    }
+
+    /**
+     * Get the code of the action at a position of the policy table
+     *
+     * @param i the position, in [0, size())
+     * @return the code of the action in the problem's ActionCatalog
+     */
+    public int getActionCode(int i) {
+        return actions[i];
+    }
+
+    public StateIndex getStateIndex() {
+        return index;
+    }
+}
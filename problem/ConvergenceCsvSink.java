@@ -0,0 +1,156 @@
+package problem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Writes convergence records to a CSV file on a background thread.
+ *
+ * Records are handed over through a bounded queue. accept never blocks: when
+ * the queue is full, or the sink is closing, the record is dropped and
+ * counted, so a slow disk can never slow down the solver. The writer thread drains the queue in batches
+ * through a buffered writer and flushes whenever the queue runs empty.
+ */
+public class ConvergenceCsvSink implements Consumer<ConvergenceRecord>, AutoCloseable {
+
+    /** Default number of records the queue holds **/
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Records waiting to be written **/
+    private final BlockingQueue<ConvergenceRecord> queue;
+    /** Records dropped because the queue was full or the sink closed **/
+    private final LongAdder dropped = new LongAdder();
+    private final BufferedWriter output;
+    private final Thread writer;
+    private volatile boolean closed;
+    /** First error of the writer thread, reported by close **/
+    private volatile IOException error;
+
+    /**
+     * Open a sink with the default capacity
+     *
+     * @param file the CSV file to write
+     * @throws IOException if the file can't be created
+     */
+    public ConvergenceCsvSink(Path file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Open a sink
+     *
+     * @param file the CSV file to write
+     * @param capacity number of records the queue holds
+     * @throws IOException if the file can't be created
+     */
+    public ConvergenceCsvSink(Path file, int capacity) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.output = Files.newBufferedWriter(file);
+        output.write(ConvergenceRecord.csvHeader());
+        output.write("\n");
+        this.writer = new Thread(this::drain, "convergence-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a record for writing, without blocking
+     *
+     * @param record the record
+     */
+    @Override
+    public void accept(ConvergenceRecord record) {
+        if (closed || !queue.offer(record)) {
+            dropped.increment();
+        } else if (closed && queue.remove(record)) {
+            // close began during the offer and the writer may have stopped,
+            // the record is only written if the writer took it already
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Get the number of records dropped because the queue was full or the
+     * sink was closing
+     *
+     * @return number of dropped records
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drain() {
+        List<ConvergenceRecord> batch = new ArrayList<>();
+        try {
+            while (!closed || !queue.isEmpty()) {
+                ConvergenceRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    flush();
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                write(batch);
+                batch.clear();
+                if (queue.isEmpty()) {
+                    flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(List<ConvergenceRecord> batch) {
+        if (error != null) {
+            return;
+        }
+        try {
+            for (ConvergenceRecord record : batch) {
+                output.write(record.toCsv());
+                output.write("\n");
+            }
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    private void flush() {
+        if (error != null) {
+            return;
+        }
+        try {
+            output.flush();
+        } catch (IOException e) {
+            error = e;
+        }
+    }
+
+    /**
+     * Write the queued records and close the file
+     *
+     * @throws IOException if writing failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        output.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package problem;
+
+/**
+ * The convergence of a solver after one trial
+ */
+public class ConvergenceRecord {
+
+    /** Trial number, from 1 **/
+    private final long trial;
+    /** Time since the solver started, in nanoseconds **/
+    private final long elapsedNanos;
+    /** Steps taken in the trial **/
+    private final long steps;
+    /** Bellman backups performed in the trial **/
+    private final long backups;
+    /** Largest and mean Bellman residual |V'(s) - V(s)| of the trial's backups **/
+    private final double maxResidual;
+    private final double meanResidual;
+    /** Value of the initial state after the trial **/
+    private final double initialValue;
+    /** Number of states labeled solved after the trial **/
+    private final long labeled;
+
+    public ConvergenceRecord(long trial, long elapsedNanos, long steps, long backups,
+                             double maxResidual, double meanResidual, double initialValue,
+                             long labeled) {
+        this.trial = trial;
+        this.elapsedNanos = elapsedNanos;
+        this.steps = steps;
+        this.backups = backups;
+        this.maxResidual = maxResidual;
+        this.meanResidual = meanResidual;
+        this.initialValue = initialValue;
+        this.labeled = labeled;
+    }
+
+    public long getTrial() {
+        return trial;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public long getBackups() {
+        return backups;
+    }
+
+    public double getMaxResidual() {
+        return maxResidual;
+    }
+
+    public double getMeanResidual() {
+        return meanResidual;
+    }
+
+    public double getInitialValue() {
+        return initialValue;
+    }
+
+    public long getLabeled() {
+        return labeled;
+    }
+
+    /**
+     * Header of the CSV format of records
+     */
+    public static String csvHeader() {
+        return "trial,elapsed_ms,steps,backups,max_residual,mean_residual,v_s0,labeled";
+    }
+
+    public String toCsv() {
+        return trial + "," + (elapsedNanos / 1e6) + "," + steps + "," + backups + ","
+                + maxResidual + "," + meanResidual + "," + initialValue + "," + labeled;
+    }
+}
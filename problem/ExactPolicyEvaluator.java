@@ -0,0 +1,273 @@
+package problem;
+
+import simulator.Simulator;
+import simulator.State;
+import simulator.Transition;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Exact evaluation of a compiled policy. The policy turns the problem into a
+ * Markov chain over the states it covers, with the slip, breakdown and
+ * refuelling delays as transition durations. On that chain this class solves
+ * for every state:
+ *
+ *  1. the expected number of steps to reach the goal
+ *          E(s) = sum_s' P(s'|s) * (d(s, s') + E(s'))
+ *  2. the probability of reaching the goal within maxT steps
+ *          P(s, b) = sum_s' P(s'|s) * P(s', b - d(s, s'))
+ *     where b is the number of steps left before the simulator stops
+ *  3. the discounted value, with each outcome discounted once per step it
+ *     takes as in the solver's backups
+ *          V(s) = R(s) + sum_s' P(s'|s) * γ^d(s, s') * V(s')
+ *     where V of the goal is RTDPSolver.GOAL_VALUE
+ *  4. the probability of ever reaching the goal, without the maxT limit,
+ *     which decides where the expected steps are finite
+ *
+ * All four are computed with iterative sweeps over the sparse chain, which
+ * replaces running thousands of simulated episodes.
+ */
+public class ExactPolicyEvaluator {
+
+    /** Convergence threshold of the iterative solves **/
+    public static final double TOLERANCE = 1e-10;
+    /** Upper bound on the number of sweeps of an iterative solve **/
+    public static final int MAX_SWEEPS = 100000;
+    /** Successor index of the goal **/
+    private static final int GOAL = -1;
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** The policy to evaluate **/
+    private CompiledPolicy policy;
+    /** The chain in compressed sparse row form: the transitions of state i
+     * are rowStart[i] to rowStart[i + 1] - 1 **/
+    private int[] rowStart;
+    private int[] successor;
+    private double[] probability;
+    private int[] duration;
+    /** R(s, π(s)) of each state **/
+    private double[] reward;
+    /** Order the states are swept in, furthest along the track first **/
+    private int[] sweepOrder;
+
+    /**
+     * Build the chain of a compiled policy
+     *
+     * @param ps the problem spec
+     * @param policy the policy to evaluate
+     */
+    public ExactPolicyEvaluator(ProblemSpec ps, CompiledPolicy policy) {
+        this.ps = ps;
+        this.policy = policy;
+        buildChain();
+    }
+
+    private void buildChain() {
+        Simulator model = new Simulator(ps);
+        int n = policy.size();
+        rowStart = new int[n + 1];
+        int capacity = n * ProblemSpec.CAR_MOVE_RANGE;
+        successor = new int[capacity];
+        probability = new double[capacity];
+        duration = new int[capacity];
+        reward = new double[n];
+        int[] position = new int[n];
+
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            rowStart[i] = size;
+            State state = policy.getState(i);
+            position[i] = state.getPos();
+            reward[i] = model.getReward(state, policy.getActionCode(i));
+            List<Transition> transitions = model.getTransitions(state, policy.getActionCode(i));
+            for (Transition t : transitions) {
+                State next = t.getNextState();
+                int j = GOAL;
+                if (!model.isGoalState(next)) {
+                    j = policy.indexOf(next);
+                    if (j < 0) {
+                        throw new IllegalArgumentException("Policy does not cover " + next);
+                    }
+                }
+                if (size == successor.length) {
+                    successor = Arrays.copyOf(successor, size * 2);
+                    probability = Arrays.copyOf(probability, size * 2);
+                    duration = Arrays.copyOf(duration, size * 2);
+                }
+                successor[size] = j;
+                probability[size] = t.getProbability();
+                duration[size] = t.getDuration();
+                size++;
+            }
+        }
+        rowStart[n] = size;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> -position[i]));
+        sweepOrder = new int[n];
+        for (int i = 0; i < n; i++) {
+            sweepOrder[i] = order[i];
+        }
+    }
+
+    /**
+     * Compute the probability of eventually reaching the goal from each state
+     *
+     * @return probability per policy index
+     */
+    public double[] computeReachProbability() {
+        double[] reach = new double[policy.size()];
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double maxChange = 0;
+            for (int i : sweepOrder) {
+                double selfLoop = 0;
+                double value = 0;
+                for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+                    if (successor[e] == GOAL) {
+                        value += probability[e];
+                    } else if (successor[e] == i) {
+                        selfLoop += probability[e];
+                    } else {
+                        value += probability[e] * reach[successor[e]];
+                    }
+                }
+                value = selfLoop < 1 ? value / (1 - selfLoop) : 0;
+                maxChange = Math.max(maxChange, Math.abs(value - reach[i]));
+                reach[i] = value;
+            }
+            if (maxChange < TOLERANCE) {
+                break;
+            }
+        }
+        return reach;
+    }
+
+    /**
+     * Compute the expected number of steps to reach the goal from each state,
+     * without the maxT limit.
+     *
+     * @return expected steps per policy index, infinity for states that may
+     *      never reach the goal
+     */
+    public double[] computeExpectedSteps() {
+        double[] reach = computeReachProbability();
+        double[] expected = new double[policy.size()];
+        for (int i = 0; i < expected.length; i++) {
+            if (reach[i] < 1 - 1e-9) {
+                expected[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double maxChange = 0;
+            for (int i : sweepOrder) {
+                if (expected[i] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double selfLoop = 0;
+                double value = 0;
+                for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+                    value += probability[e] * duration[e];
+                    if (successor[e] == i) {
+                        selfLoop += probability[e];
+                    } else if (successor[e] != GOAL) {
+                        value += probability[e] * expected[successor[e]];
+                    }
+                }
+                value /= (1 - selfLoop);
+                maxChange = Math.max(maxChange, Math.abs(value - expected[i]) / Math.max(1, value));
+                expected[i] = value;
+            }
+            if (maxChange < TOLERANCE) {
+                break;
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Compute the discounted value of the policy from each state, without
+     * the maxT limit. Slips, repairs and refuelling are discounted once per
+     * step they take, so the values compare to the values of the solver.
+     *
+     * @return discounted value per policy index
+     */
+    public double[] computeDiscountedValue() {
+        double[] value = new double[policy.size()];
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double maxChange = 0;
+            for (int i : sweepOrder) {
+                double selfLoop = 0;
+                double v = reward[i];
+                for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+                    double weight = probability[e] * ps.getDiscount(duration[e]);
+                    if (successor[e] == GOAL) {
+                        v += weight * RTDPSolver.GOAL_VALUE;
+                    } else if (successor[e] == i) {
+                        selfLoop += weight;
+                    } else {
+                        v += weight * value[successor[e]];
+                    }
+                }
+                v /= (1 - selfLoop);
+                maxChange = Math.max(maxChange, Math.abs(v - value[i]) / Math.max(1, Math.abs(v)));
+                value[i] = v;
+            }
+            if (maxChange < TOLERANCE) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Compute the probability of reaching the goal before the simulator stops
+     * at maxT, when starting from each state at step 0.
+     *
+     * @return success probability per policy index
+     */
+    public double[] computeSuccessProbability() {
+        int n = policy.size();
+        int maxDuration = 0;
+        for (int e = 0; e < rowStart[n]; e++) {
+            maxDuration = Math.max(maxDuration, duration[e]);
+        }
+        // ring of the last maxDuration + 1 budgets, layer b holds P(., b)
+        double[][] layers = new double[maxDuration + 1][];
+        for (int b = 0; b <= ps.getMaxT(); b++) {
+            double[] current = new double[n];
+            layers[b % layers.length] = current;
+            // zero-duration transitions stay in the same layer, so sweep it
+            // until it is stable
+            for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+                double maxChange = 0;
+                for (int i : sweepOrder) {
+                    double value = 0;
+                    for (int e = rowStart[i]; e < rowStart[i + 1]; e++) {
+                        int left = b - duration[e];
+                        if (successor[e] == GOAL) {
+                            value += probability[e];
+                        } else if (left >= 0) {
+                            value += probability[e] * layers[left % layers.length][successor[e]];
+                        }
+                    }
+                    maxChange = Math.max(maxChange, Math.abs(value - current[i]));
+                    current[i] = value;
+                }
+                if (maxChange < TOLERANCE) {
+                    break;
+                }
+            }
+        }
+        return layers[ps.getMaxT() % layers.length];
+    }
+
+    public CompiledPolicy getPolicy() {
+        return policy;
+    }
+}
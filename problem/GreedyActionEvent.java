@@ -0,0 +1,29 @@
+package problem;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of choosing the greedy action of a state
+ */
+@Name("rtdp.GreedyAction")
+@Label("Greedy Action")
+@Category({"RTDP", "Solver"})
+@Description("Evaluation of every action of a state to choose the best one")
+@StackTrace(false)
+class GreedyActionEvent extends jdk.jfr.Event {
+
+    @Label("Position")
+    int position;
+
+    @Label("Action Type")
+    @Description("Number of the chosen action, A1 to A8, 0 if none has a finite value")
+    int actionType;
+
+    @Label("Backups")
+    @Description("Bellman backups performed by the solver so far")
+    long backups;
+}
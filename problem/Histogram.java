@@ -0,0 +1,188 @@
+package problem;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent histogram of non-negative long values (e.g. latencies in
+ * nanoseconds) with log-linear buckets in the style of HdrHistogram: values
+ * below 2^SUB_BUCKET_BITS have a bucket each, larger values are split into
+ * 2^(SUB_BUCKET_BITS - 1) buckets per power of two. Every recorded value is
+ * therefore known to within 1 / 2^(SUB_BUCKET_BITS - 1) of itself (under
+ * 2%), over the whole long range, in a fixed 30 KB.
+ *
+ * Recording is lock-free and allocation-free.
+ */
+public class Histogram {
+
+    /** Bits of precision kept per value **/
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    /** Number of buckets to cover every non-negative long **/
+    private static final int BUCKETS = SUB_BUCKETS
+            + (Long.SIZE - 1 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+
+    /** Count of values per bucket **/
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /** Number, sum and largest of the values **/
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Record a value
+     *
+     * @param value the value, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a copy of the recorded values. Values recorded while the copy is
+     * taken may or may not be included.
+     *
+     * @return the copy
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Clear all recorded values
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (exponent - SUB_BUCKET_BITS + 1));
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS
+                + (top - HALF_SUB_BUCKETS);
+    }
+
+    /** The smallest value of a bucket **/
+    private static long lowestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int k = bucket - SUB_BUCKETS;
+        int exponent = SUB_BUCKET_BITS + k / HALF_SUB_BUCKETS;
+        long top = HALF_SUB_BUCKETS + k % HALF_SUB_BUCKETS;
+        return top << (exponent - SUB_BUCKET_BITS + 1);
+    }
+
+    /** The largest value of a bucket **/
+    private static long highestOf(int bucket) {
+        return bucket + 1 < BUCKETS ? lowestOf(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+
+    /**
+     * The recorded values at one point in time
+     */
+    public static class Snapshot {
+        /** Count of values per bucket **/
+        private final long[] counts;
+        /** Number, sum and largest of the values **/
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get the mean of the values
+         *
+         * @return the mean, NaN if there are none
+         */
+        public double getMean() {
+            return count == 0 ? Double.NaN : (double) sum / count;
+        }
+
+        /**
+         * Get a quantile of the values
+         *
+         * @param q the quantile in [0, 1]
+         * @return the largest value of the bucket holding the quantile,
+         *      capped at the largest value recorded, 0 if there are none
+         */
+        public long getValueAtQuantile(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestOf(i), max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Get the number of values at or below a bound
+         *
+         * @param bound the bound
+         * @return the number of values in buckets whose largest value is at
+         *      or below the bound
+         */
+        public long getCountAtOrBelow(long bound) {
+            long seen = 0;
+            for (int i = 0; i < counts.length && highestOf(i) <= bound; i++) {
+                seen += counts[i];
+            }
+            return seen;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p90=%d p99=%d p999=%d max=%d",
+                    count, getMean(), getValueAtQuantile(0.5), getValueAtQuantile(0.9),
+                    getValueAtQuantile(0.99), getValueAtQuantile(0.999), max);
+        }
+    }
+}
@@ -1,168 +1,272 @@
 package problem;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
+import simulator.RandomStreams;
 import simulator.Simulator;
 import simulator.State;
-import simulator.Step;
 
 public class Main {
 
-    public static void main(String[] args) {
+    /** Binary forms of the input files loaded before, so they aren't parsed again **/
+    private static final ProblemSpecCache SPEC_CACHE =
+            new ProblemSpecCache(Paths.get(System.getProperty("user.dir"), "cache"));
 
-        // test file paths, absolute path
-        String currentWorkingDir = System.getProperty("user.dir");
-        System.out.println("Current working directory: " + currentWorkingDir);
-        String inputFile_1_4 = currentWorkingDir + "/input/input_lvl1_4.txt";
-        String inputFile_2_2 = currentWorkingDir + "/input/input_lvl2_2.txt";
-        String inputFile_3_3 = currentWorkingDir + "/input/input_lvl3_3.txt";
-        String inputFile_4_2 = currentWorkingDir + "/input/input_lvl4_2.txt";
-        String inputFile_5_2 = currentWorkingDir + "/input/input_lvl5_2.txt";
-
-        String outputFile_1_4 = currentWorkingDir + "/output/output_lvl1_4.txt";
-        String outputFile_2_2 = currentWorkingDir + "/output/output_lvl2_2.txt";
-        String outputFile_3_3 = currentWorkingDir + "/output/output_lvl3_3.txt";
-        String outputFile_4_2 = currentWorkingDir + "/output/output_lvl4_2.txt";
-        String outputFile_5_2 = currentWorkingDir + "/output/output_lvl5_2.txt";
+    /** Returned by singleProcess when the run failed with an error **/
+    private static final int RUN_FAILED = -2;
+    /** Usage of the command line **/
+    private static final String USAGE = String.join("\n",
+            "Usage: Main [options]",
+            "  -a, --algorithm NAME    rtdp or lrtdp (default lrtdp)",
+            "  -i, --input FILE        input file (default input/input_lvl5_2.txt)",
+            "  -o, --output FILE       output file (default output/output_<input>)",
+            "  -t, --time-budget MS    planning time before acting (default 0, no planning)",
+            "      --trials N          planning trials at most (default 0, no limit)",
+            "  -e, --epsilon E         convergence threshold (default 0.01)",
+            "      --frontier-fraction F start fraction F of the planning trials from high-residual states (default 0)",
+            "      --frontier-size N   high-residual states kept to start trials from (default 64)",
+            "      --fuel-buckets      share values between fuel levels that allow the same moves",
+            "  -s, --seed S            seed, makes the run reproducible",
+            "      --headless          write no output file and print no simulator messages",
+            "      --episodes N        evaluate the policy after solving, over N episodes and exactly",
+            "  -j, --threads N         evaluation threads (default: cores, bounded by heap)",
+            "      --convergence-csv F write a convergence record per trial to F",
+            "      --metrics-port P    serve Prometheus metrics on localhost:P/metrics",
+            "  -h, --help              print this message");
 
-        // run the process for one time
-        int goalSteps = singleProcess(inputFile_5_2, outputFile_5_2);
-        System.out.println("The number of steps to reach the goal state is: " + goalSteps);
+    /**
+     * The options of a run, parsed from the command line
+     */
+    private static class Options {
+        String algorithm = "lrtdp";
+        String input;
+        String output;
+        long timeBudgetMillis;
+        long trials;
+        double epsilon = 0.01;
+        double frontierFraction;
+        int frontierSize = RTDPSolver.DEFAULT_FRONTIER_CAPACITY;
+        boolean fuelBuckets;
+        Long seed;
+        boolean headless;
+        int episodes;
+        int threads = BatchRunner.defaultThreads();
+        String convergenceCsv;
+        int metricsPort = -1;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-a": case "--algorithm":
+                        options.algorithm = value(args, ++i, arg).toLowerCase();
+                        break;
+                    case "-i": case "--input":
+                        options.input = value(args, ++i, arg);
+                        break;
+                    case "-o": case "--output":
+                        options.output = value(args, ++i, arg);
+                        break;
+                    case "-t": case "--time-budget":
+                        options.timeBudgetMillis = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--trials":
+                        options.trials = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "-e": case "--epsilon":
+                        options.epsilon = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--frontier-fraction":
+                        options.frontierFraction = Double.parseDouble(value(args, ++i, arg));
+                        break;
+                    case "--frontier-size":
+                        options.frontierSize = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-s": case "--seed":
+                        options.seed = Long.parseLong(value(args, ++i, arg));
+                        break;
+                    case "--fuel-buckets":
+                        options.fuelBuckets = true;
+                        break;
+                    case "--headless":
+                        options.headless = true;
+                        break;
+                    case "--episodes":
+                        options.episodes = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "-j": case "--threads":
+                        options.threads = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    case "--convergence-csv":
+                        options.convergenceCsv = value(args, ++i, arg);
+                        break;
+                    case "--metrics-port":
+                        options.metricsPort = Integer.parseInt(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.timeBudgetMillis < 0 || options.trials < 0 || options.episodes < 0) {
+                throw new IllegalArgumentException("Time budget, trials and episodes can't be negative");
+            }
+            if (options.threads < 1) {
+                throw new IllegalArgumentException("Thread count must be positive: " + options.threads);
+            }
+            String currentWorkingDir = System.getProperty("user.dir");
+            if (options.input == null) {
+                options.input = currentWorkingDir + "/input/input_lvl5_2.txt";
+            }
+            if (options.output == null) {
+                options.output = Paths.get(currentWorkingDir, "output",
+                        BatchRunner.outputName(Paths.get(options.input))).toString();
+            }
+            return options;
+        }
 
-        // run the process for multiple times(runTimes) to get the statistics
-        // int runTimes = 50;
-        // int [][] results = repeatProcess(runTimes, inputFile_5_2, outputFile_5_2);
-        // int[] resultRTDP = results[0];
-        // int[] resultLRTDP = results[1];
-        
-        // statistics(results);
+        private static String value(String[] args, int i, String option) {
+            if (i >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[i];
+        }
     }
 
-    /**
-     * create a method to run the process for one time
-     * @param inputFile
-     * @param outputFile
-     * @return the number of steps to reach the goal state, if not reach, return -1
-     */
-    private static int singleProcess(String inputFile, String outputFile) {
-        ProblemSpec ps;
+    public static void main(String[] args) {
+        if (Arrays.asList(args).contains("-h") || Arrays.asList(args).contains("--help")) {
+            System.out.println(USAGE);
+            return;
+        }
+        Options options;
         try {
-            ps = new ProblemSpec(inputFile);
-            Simulator simulator = new Simulator(ps, outputFile);
-            State initialState = simulator.getCurrentState();
-            RTDPSolver solver = new RTDPSolver(ps, simulator, initialState);
-            solver.runLabeledRTDP();
-            if (simulator.isGoalState(simulator.getCurrentState())) {
-                return simulator.getSteps();
-            } else {
-                return -1;
-            }
-        } catch (IOException e) {
-            System.out.println("IO Exception occurred");
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too
+            System.out.println(e.getMessage());
+            System.out.println(USAGE);
             System.exit(1);
+            return;
         }
-        return -1;
 
+        // run the process for one time
+        int goalSteps = singleProcess(options);
+        if (goalSteps == RUN_FAILED) {
+            System.exit(1);
+        }
+        System.out.println("The number of steps to reach the goal state is: " + goalSteps);
     }
 
     /**
-     * create a method to repeat the process for runTimes
-     * @param runTimes
-     * @return an array of int runTimes elements, 
-     * each element is the number of steps to reach the goal state, if not reach, return -1
+     * Create the solver for the algorithm of the options
+     * @param options the options, algorithm rtdp or lrtdp
+     * @param ps the problem spec
+     * @param simulator the simulator to act on
+     * @return the solver
      */
-    private static int[][] repeatProcess(int runTimes, String inputFile, String outputFile) {
-        int[] resultRTDP = new int[runTimes];
-        int[] resultLRTDP = new int[runTimes];
-        for (int i = 0; i < runTimes; i++) {
-            try {
-                // RTDP
-                ProblemSpec ps = new ProblemSpec(inputFile);
-                Simulator simulator = new Simulator(ps, outputFile);
-                State initialState = simulator.getCurrentState();
-                RTDPSolver solver = new RTDPSolver(ps, simulator, initialState);
-                solver.runRTDP();
-                if (simulator.isGoalState(simulator.getCurrentState())) {
-                    resultRTDP[i] = simulator.getSteps();
-                } else {
-                    resultRTDP[i] = -1;
-                }
-
-                // LRTDP
-                ps = new ProblemSpec(inputFile);
-                simulator = new Simulator(ps, outputFile);
-                initialState = simulator.getCurrentState();
-                solver = new RTDPSolver(ps, simulator, initialState);
-                solver.runLabeledRTDP();
-                if (simulator.isGoalState(simulator.getCurrentState())) {
-                    resultLRTDP[i] = simulator.getSteps();
-                } else {
-                    resultLRTDP[i] = -1;
-                }
-            } catch (IOException e) {
-                System.out.println("IO Exception occurred");
-                System.exit(1);
-            }
-        }
-        System.out.println("The number of steps to reach the goal state for RTDP is: ");
-        for (int i = 0; i < runTimes; i++) {
-            System.out.print(resultRTDP[i] + " ");
+    private static Solver createSolver(Options options, ProblemSpec ps, Simulator simulator) {
+        RTDPSolver solver;
+        switch (options.algorithm) {
+            case "rtdp":
+                solver = new RTDPSolver(ps, simulator, simulator.getCurrentState(), false);
+                break;
+            case "lrtdp":
+                solver = new RTDPSolver(ps, simulator, simulator.getCurrentState(), true);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + options.algorithm);
         }
-        System.out.println("The number of steps to reach the goal state for LRTDP is: ");
-        for (int i = 0; i < runTimes; i++) {
-            System.out.print(resultLRTDP[i] + " ");
+        if (options.fuelBuckets) {
+            solver.setStateIndex(new AbstractStateIndex(ps, true));
         }
-        return new int[][] {resultRTDP, resultLRTDP};
+        solver.setFrontierFraction(options.frontierFraction);
+        solver.setFrontierCapacity(options.frontierSize);
+        return solver;
     }
 
-    /** 
-     * statistics for the results, calculate mean, median, standard deviation
-     * @param result
-     * @return an array of double, the first element is the mean, the second element is the median, the third element is the standard deviation
+    /**
+     * create a method to run the process for one time
+     * @param options the options of the run
+     * @return the number of steps to reach the goal state, if not reach, return -1,
+     *      RUN_FAILED if the run failed with an error. The metrics server and
+     *      convergence CSV are closed before returning either way.
      */
-    private static double[][] statistics(int[][] result) {
-        double[] statisticsRTDP = new double[3];
-        double[] statisticsLRTDP = new double[3];
-        double sumRTDP = 0;
-        double sumLRTDP = 0;
-        for (int i = 0; i < result.length; i++) {
-            sumRTDP += result[0][i];
-            sumLRTDP += result[1][i];
-        }
-        statisticsRTDP[0] = sumRTDP / result.length;
-        statisticsLRTDP[0] = sumLRTDP / result.length;
-
-        double medianRTDP;
-        double medianLRTDP;
-        if (result.length % 2 == 0) {
-            medianRTDP = (result[0][result.length / 2 - 1] + result[0][result.length / 2]) / 2;
-            medianLRTDP = (result[1][result.length / 2 - 1] + result[1][result.length / 2]) / 2;
-        } else {
-            medianRTDP = result[0][result.length / 2];
-            medianLRTDP = result[1][result.length / 2];
-        }
-        statisticsRTDP[1] = medianRTDP;
-        statisticsLRTDP[1] = medianLRTDP;
-
-        double sumOfSquaresRTDP = 0;
-        double sumOfSquaresLRTDP = 0;
-        for (int i = 0; i < result.length; i++) {
-            sumOfSquaresRTDP += Math.pow(result[0][i] - statisticsRTDP[0], 2);
-            sumOfSquaresLRTDP += Math.pow(result[1][i] - statisticsLRTDP[0], 2);
-        }
-        statisticsRTDP[2] = Math.sqrt(sumOfSquaresRTDP / result.length);
-        statisticsLRTDP[2] = Math.sqrt(sumOfSquaresLRTDP / result.length);
+    private static int singleProcess(Options options) {
+        ProblemSpec ps;
+        MetricsServer metricsServer = null;
+        ConvergenceCsvSink convergenceSink = null;
+        try {
+            ps = SPEC_CACHE.load(Paths.get(options.input));
+            Simulator simulator;
+            if (options.headless) {
+                simulator = new Simulator(ps);
+            } else {
+                simulator = new Simulator(ps, options.output);
+            }
+            if (options.seed != null) {
+                simulator.setRandom(new RandomStreams(options.seed).stream(0));
+            }
+            Solver solver = createSolver(options, ps, simulator);
+            solver.setTimeBudget(options.timeBudgetMillis);
+            solver.setMaxTrials(options.trials);
+            solver.setEpsilon(options.epsilon);
+            if (options.convergenceCsv != null) {
+                convergenceSink = new ConvergenceCsvSink(Paths.get(options.convergenceCsv));
+                solver.setConvergenceSink(convergenceSink);
+            }
+            if (options.metricsPort >= 0) {
+                metricsServer = new MetricsServer(options.metricsPort);
+                metricsServer.register(solver.getName(), solver.getMetrics());
+                metricsServer.register(solver.getName(), simulator.getMetrics());
+                System.out.println("Serving metrics on http://localhost:"
+                        + metricsServer.getPort() + "/metrics");
+            }
 
-        System.out.println("The mean, median, and standard deviation for RTDP are: ");
-        for (int i = 0; i < 3; i++) {
-            System.out.print(statisticsRTDP[i] + " ");
-        }
-        System.out.println("The mean, median, and standard deviation for LRTDP are: ");
-        for (int i = 0; i < 3; i++) {
-            System.out.print(statisticsLRTDP[i] + " ");
-        }
+            State initialState = simulator.getCurrentState();
+            int steps = solver.solve();
+            System.out.print(solver.getMetrics().snapshot());
 
-        return new double[][] {statisticsRTDP, statisticsLRTDP};
+            if (options.episodes > 0) {
+                CompiledPolicy policy = CompiledPolicy.compile(ps, solver.getPolicy());
+                long seed = options.seed != null ? options.seed : System.nanoTime();
+                PolicyEvaluator evaluator = new PolicyEvaluator(ps, policy, options.threads, seed);
+                evaluator.setMetrics(simulator.getMetrics());
+                PolicyEvaluator.Result result = evaluator.evaluate(options.episodes);
+                System.out.println("The mean steps to reach the goal state for " + solver.getName()
+                        + " is: " + result.getMeanSteps() + ", failure rate: " + result.getFailureRate()
+                        + " (" + options.episodes + " episodes, " + policy.size() + " states)");
+                System.out.println("Steps to reach the goal state: " + result.getStepsStatistics());
+
+                // the exact values of the policy, free of sampling noise
+                ExactPolicyEvaluator exact = new ExactPolicyEvaluator(ps, policy);
+                int start = policy.indexOf(initialState);
+                System.out.println("The exact expected steps for " + solver.getName()
+                        + " is: " + exact.computeExpectedSteps()[start]
+                        + ", success probability within maxT: "
+                        + exact.computeSuccessProbability()[start]
+                        + ", discounted value: " + exact.computeDiscountedValue()[start]);
+            }
+            return steps;
+        } catch (IOException e) {
+            System.out.println("IO Exception occurred: " + e.getMessage());
+            return RUN_FAILED;
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return RUN_FAILED;
+        } finally {
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            if (convergenceSink != null) {
+                try {
+                    convergenceSink.close();
+                } catch (IOException e) {
+                    System.out.println("IO Exception occurred: " + e.getMessage());
+                }
+            }
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,249 @@
+package problem;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import simulator.SimulatorMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics of running solvers in the Prometheus text format at
+ * http://localhost:port/metrics.
+ *
+ * A scrape only takes snapshots of the registered SolverMetrics and reads
+ * the counters of the registered SimulatorMetrics, all LongAdders and
+ * histograms read without locking, so it never holds up a solver. Rates
+ * such as backups or episodes per second are left to the scraper, e.g.
+ * rate(rtdp_backups_total[1m]). The heap gauges come from the JVM's
+ * MemoryMXBean. The server listens on the loopback address only.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    /** Content type of the Prometheus text format **/
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /** Quantiles reported for the histograms **/
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** Metrics of each solver, by solver label **/
+    private final Map<String, SolverMetrics> solvers = new ConcurrentHashMap<>();
+    /** Episode and step counters of each simulator, by solver label **/
+    private final Map<String, SimulatorMetrics> simulators = new ConcurrentHashMap<>();
+    private final HttpServer server;
+    /** Thread answering the requests **/
+    private final ExecutorService executor;
+
+    /**
+     * Start a server
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @throws IOException if the port can't be bound
+     */
+    public MetricsServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Get the port the server listens on
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serve the metrics of a solver, replacing any metrics with the same label
+     *
+     * @param solver the label of the solver, e.g. "lrtdp"
+     * @param metrics the solver's metrics
+     */
+    public void register(String solver, SolverMetrics metrics) {
+        solvers.put(solver, metrics);
+    }
+
+    /**
+     * Serve the episode and step counters of the simulator a solver acts on,
+     * replacing any counters with the same label
+     *
+     * @param solver the label of the solver, e.g. "lrtdp"
+     * @param metrics the simulator's metrics
+     */
+    public void register(String solver, SimulatorMetrics metrics) {
+        simulators.put(solver, metrics);
+    }
+
+    /**
+     * Stop serving the metrics of a solver and its simulator
+     *
+     * @param solver the label of the solver
+     */
+    public void unregister(String solver) {
+        solvers.remove(solver);
+        simulators.remove(solver);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render the metrics of all solvers in the Prometheus text format
+     *
+     * @return the exposition text
+     */
+    public String render() {
+        Map<String, SolverMetrics.Snapshot> snapshots = new TreeMap<>();
+        for (Map.Entry<String, SolverMetrics> solver : solvers.entrySet()) {
+            snapshots.put(solver.getKey(), solver.getValue().snapshot());
+        }
+        StringBuilder sb = new StringBuilder();
+
+        header(sb, "rtdp_backups_total", "counter", "Bellman backups performed");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_backups_total", label(s.getKey()), s.getValue().getBackups());
+        }
+        header(sb, "rtdp_q_evaluations_total", "counter", "Q(s, a) evaluations per action type");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            for (ActionType actionType : ActionType.values()) {
+                sample(sb, "rtdp_q_evaluations_total", label(s.getKey())
+                                + ",action=\"A" + actionType.getActionNo() + "\"",
+                        s.getValue().getQEvaluations(actionType));
+            }
+        }
+        header(sb, "rtdp_greedy_cache_hits_total", "counter",
+                "Greedy action queries answered from the Q-value cache");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_greedy_cache_hits_total", label(s.getKey()),
+                    s.getValue().getGreedyCacheHits());
+        }
+        header(sb, "rtdp_actions_pruned_total", "counter",
+                "Actions skipped by the greedy search by their upper bound");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_actions_pruned_total", label(s.getKey()), s.getValue().getActionsPruned());
+        }
+        header(sb, "rtdp_states_discovered_total", "counter", "States added to the value table");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_states_discovered_total", label(s.getKey()),
+                    s.getValue().getStatesDiscovered());
+        }
+        header(sb, "rtdp_states_solved_total", "counter", "States labeled solved");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_states_solved_total", label(s.getKey()), s.getValue().getStatesSolved());
+        }
+        header(sb, "rtdp_value_table_states", "gauge", "States in the value table");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            sample(sb, "rtdp_value_table_states", label(s.getKey()),
+                    s.getValue().getValueTableStates());
+        }
+
+        Map<String, SimulatorMetrics> counters = new TreeMap<>(simulators);
+        header(sb, "rtdp_episodes_total", "counter", "Episodes simulated, runs and policy evaluation");
+        for (Map.Entry<String, SimulatorMetrics> s : counters.entrySet()) {
+            sample(sb, "rtdp_episodes_total", label(s.getKey()), s.getValue().getEpisodes());
+        }
+        header(sb, "rtdp_simulated_steps_total", "counter",
+                "Actions simulated, in planning trials, runs and policy evaluation");
+        for (Map.Entry<String, SimulatorMetrics> s : counters.entrySet()) {
+            sample(sb, "rtdp_simulated_steps_total", label(s.getKey()), s.getValue().getSteps());
+        }
+
+        header(sb, "rtdp_trial_steps", "summary", "Steps per trial");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            summary(sb, "rtdp_trial_steps", label(s.getKey()), s.getValue().getTrialLengths(), 1);
+        }
+        header(sb, "rtdp_greedy_action_seconds", "summary", "Latency of choosing the greedy action");
+        for (Map.Entry<String, SolverMetrics.Snapshot> s : snapshots.entrySet()) {
+            summary(sb, "rtdp_greedy_action_seconds", label(s.getKey()),
+                    s.getValue().getGreedyLatency(), 1e-9);
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        header(sb, "rtdp_heap_used_bytes", "gauge", "Heap in use, live and not yet collected");
+        sample(sb, "rtdp_heap_used_bytes", heap.getUsed());
+        header(sb, "rtdp_heap_committed_bytes", "gauge", "Heap committed by the JVM");
+        sample(sb, "rtdp_heap_committed_bytes", heap.getCommitted());
+        header(sb, "rtdp_heap_max_bytes", "gauge", "Largest heap the JVM may use, -1 if undefined");
+        sample(sb, "rtdp_heap_max_bytes", heap.getMax());
+        return sb.toString();
+    }
+
+    private static String label(String solver) {
+        return "solver=\"" + solver.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n") + "\"";
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, String labels, double value) {
+        sb.append(name).append('{').append(labels).append("} ").append(format(value)).append('\n');
+    }
+
+    private static void sample(StringBuilder sb, String name, double value) {
+        sb.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    /**
+     * Write a histogram as a summary, scaling its values by the given unit
+     */
+    private static void summary(StringBuilder sb, String name, String labels,
+                                Histogram.Snapshot histogram, double unit) {
+        for (double q : QUANTILES) {
+            sample(sb, name, labels + ",quantile=\"" + q + "\"",
+                    histogram.getValueAtQuantile(q) * unit);
+        }
+        sample(sb, name + "_sum", labels, histogram.getSum() * unit);
+        sample(sb, name + "_count", labels, histogram.getCount());
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ROOT, "%.9g", value);
+    }
+
+    /**
+     * Stop the server
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,17 @@
+package problem;
+
+import simulator.State;
+
+/**
+ * A policy maps a state to the action to perform in it
+ */
+public interface Policy {
+
+    /**
+     * Get the action to perform in a state
+     *
+     * @param state the current state (not a goal state)
+     * @return the action to perform
+     */
+    Action getAction(State state);
+}
@@ -0,0 +1,261 @@
+package problem;
+
+import simulator.MoveModel;
+import simulator.RandomStreams;
+import simulator.Simulator;
+import simulator.SimulatorMetrics;
+import simulator.State;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Monte Carlo evaluation of a fixed policy. Episodes are split over a number
+ * of worker threads, each with its own headless simulator and its own result,
+ * and the results are merged once all workers are done.
+ *
+ * Episode i samples from stream i of the evaluator's RandomStreams, so the
+ * result only depends on the seed, not on the number of threads.
+ */
+public class PolicyEvaluator {
+
+    /** Initial length of the steps-to-goal counts, grown to the longest episode **/
+    private static final int INITIAL_STEPS = 64;
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** The policy to evaluate, must be safe to call from several threads **/
+    private Policy policy;
+    /** Number of worker threads **/
+    private int threads;
+    /** Random streams, one per episode **/
+    private RandomStreams streams;
+    /** Counters the worker simulators record their episodes and steps in, null for their own **/
+    private SimulatorMetrics metrics;
+
+    /**
+     * The distribution of steps-to-goal over a number of episodes
+     */
+    public static class Result {
+        /** stepCounts[t] is the number of episodes reaching the goal in t steps **/
+        private long[] stepCounts;
+        /** Number of episodes that did not reach the goal **/
+        private long failures;
+        /** Number of episodes run **/
+        private long episodes;
+        /** Moments and quantile sketch of the steps of the successful episodes **/
+        private StreamingStatistics steps = new StreamingStatistics();
+
+        private Result() {
+            stepCounts = new long[INITIAL_STEPS];
+        }
+
+        private void addSuccess(int steps) {
+            if (steps >= stepCounts.length) {
+                stepCounts = Arrays.copyOf(stepCounts, Math.max(steps + 1, stepCounts.length * 2));
+            }
+            stepCounts[steps]++;
+            episodes++;
+            this.steps.add(steps);
+        }
+
+        private void addFailure() {
+            failures++;
+            episodes++;
+        }
+
+        private void merge(Result other) {
+            if (other.stepCounts.length > stepCounts.length) {
+                stepCounts = Arrays.copyOf(stepCounts, other.stepCounts.length);
+            }
+            for (int t = 0; t < other.stepCounts.length; t++) {
+                stepCounts[t] += other.stepCounts[t];
+            }
+            failures += other.failures;
+            episodes += other.episodes;
+            steps.merge(other.steps);
+        }
+
+        /**
+         * Get the number of episodes reaching the goal in each number of steps
+         *
+         * @return array indexed by steps-to-goal
+         */
+        public long[] getStepCounts() {
+            return stepCounts.clone();
+        }
+
+        public long getEpisodes() {
+            return episodes;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * Get the fraction of episodes that did not reach the goal
+         *
+         * @return failure rate in [0, 1]
+         */
+        public double getFailureRate() {
+            return episodes == 0 ? 0 : (double) failures / episodes;
+        }
+
+        /**
+         * Get the mean steps-to-goal over the successful episodes
+         *
+         * @return mean steps, NaN if no episode reached the goal
+         */
+        public double getMeanSteps() {
+            long successes = 0;
+            double sum = 0;
+            for (int t = 0; t < stepCounts.length; t++) {
+                successes += stepCounts[t];
+                sum += (double) t * stepCounts[t];
+            }
+            return successes == 0 ? Double.NaN : sum / successes;
+        }
+
+        /**
+         * Get the mean, standard deviation and quantiles of steps-to-goal over
+         * the successful episodes
+         *
+         * @return a copy of the statistics
+         */
+        public StreamingStatistics getStepsStatistics() {
+            StreamingStatistics copy = new StreamingStatistics();
+            copy.merge(steps);
+            return copy;
+        }
+
+        /**
+         * Get a quantile of steps-to-goal over the successful episodes
+         *
+         * @param q the quantile in [0, 1]
+         * @return the smallest steps value with at least q of the successes
+         *      at or below it, -1 if no episode reached the goal
+         */
+        public int getStepsQuantile(double q) {
+            long successes = episodes - failures;
+            if (successes == 0) {
+                return -1;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * successes));
+            long seen = 0;
+            for (int t = 0; t < stepCounts.length; t++) {
+                seen += stepCounts[t];
+                if (seen >= rank) {
+                    return t;
+                }
+            }
+            return stepCounts.length - 1;
+        }
+    }
+
+    /**
+     * Construct a policy evaluator
+     *
+     * @param ps the problem spec
+     * @param policy the policy to evaluate, must be safe to call from several
+     *               threads (e.g. a CompiledPolicy)
+     * @param threads number of worker threads
+     * @param seed the master seed of the episode random streams
+     */
+    public PolicyEvaluator(ProblemSpec ps, Policy policy, int threads, long seed) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.ps = ps;
+        this.policy = policy;
+        this.threads = threads;
+        this.streams = new RandomStreams(seed);
+    }
+
+    /**
+     * Construct a policy evaluator using every available core
+     *
+     * @param ps the problem spec
+     * @param policy the policy to evaluate, must be safe to call from several
+     *               threads (e.g. a CompiledPolicy)
+     * @param seed the master seed of the episode random streams
+     */
+    public PolicyEvaluator(ProblemSpec ps, Policy policy, long seed) {
+        this(ps, policy, Runtime.getRuntime().availableProcessors(), seed);
+    }
+
+    /**
+     * Count the episodes and steps of the evaluation in the given metrics,
+     * e.g. the metrics of the simulator the policy was planned on
+     *
+     * @param metrics the metrics, null to leave them uncounted
+     */
+    public void setMetrics(SimulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Run a number of episodes of the policy
+     *
+     * @param episodes the number of episodes
+     * @return the distribution of steps-to-goal
+     */
+    public Result evaluate(int episodes) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            MoveModel moveModel = ps.getMoveModel();
+            List<Future<Result>> futures = new ArrayList<>();
+            for (int w = 0; w < threads; w++) {
+                int from = (int) ((long) episodes * w / threads);
+                int to = (int) ((long) episodes * (w + 1) / threads);
+                futures.add(executor.submit(() -> runEpisodes(moveModel, from, to)));
+            }
+            Result result = new Result();
+            for (Future<Result> future : futures) {
+                result.merge(future.get());
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Policy evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Policy evaluation failed", e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run episodes on a private simulator
+     *
+     * @param moveModel the move model shared by all workers
+     * @param from the first episode number
+     * @param to the episode number after the last one
+     * @return the distribution of steps-to-goal of these episodes
+     */
+    private Result runEpisodes(MoveModel moveModel, int from, int to) {
+        Simulator simulator = new Simulator(ps, moveModel);
+        if (metrics != null) {
+            simulator.setMetrics(metrics);
+        }
+        Result result = new Result();
+        for (int i = from; i < to; i++) {
+            simulator.setRandom(streams.stream(i));
+            State state = simulator.reset();
+            while (state != null && !simulator.isGoalState(state)) {
+                state = simulator.step(policy.getAction(state));
+            }
+            if (state == null) {
+                result.addFailure();
+            } else {
+                result.addSuccess(simulator.getSteps());
+            }
+        }
+        return result;
+    }
+}
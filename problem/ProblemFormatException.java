@@ -0,0 +1,45 @@
+package problem;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an input file doesn't follow the problem format. Carries the
+ * position of the error in the file.
+ */
+public class ProblemFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The file being parsed **/
+    private final String fileName;
+    /** Line and column of the error, both starting at 1 **/
+    private final int line;
+    private final int column;
+
+    /**
+     * Construct a format error
+     *
+     * @param fileName the file being parsed
+     * @param line the line of the error, from 1
+     * @param column the column of the error, from 1
+     * @param message what was wrong
+     */
+    public ProblemFormatException(String fileName, int line, int column, String message) {
+        super(fileName + ":" + line + ":" + column + ": " + message);
+        this.fileName = fileName;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
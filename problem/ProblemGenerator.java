@@ -0,0 +1,327 @@
+package problem;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates random problem files in the input format read by ProblemSpec, for
+ * testing how the solvers scale beyond the bundled inputs.
+ *
+ * The track is made of runs of cells of the same terrain; run lengths are
+ * geometric with a configurable mean and run terrains are drawn from the
+ * terrain mix. Car, driver and tire probability rows are random, biased
+ * towards forward moves so the goal stays reachable. The same seed and
+ * settings always give the same file.
+ */
+public class ProblemGenerator {
+
+    /** Probabilities are written as multiples of 1 / PROBABILITY_UNITS so
+     * every row sums to exactly 1 **/
+    private static final int PROBABILITY_UNITS = 1000;
+    /** Relative weight of each move index in a random probability row:
+     * backward moves, stay, forward moves, slip, breakdown **/
+    private static final double[] MOVE_WEIGHTS =
+            {0.3, 0.3, 0.4, 0.6, 1.0, 2.0, 2.0, 2.0, 1.5, 1.0, 0.4, 0.3};
+    /** Fuel used per move on a terrain with a car, in [1, MAX_FUEL_USAGE] **/
+    private static final int MAX_FUEL_USAGE = 6;
+    /** Slip probability of a terrain, in [0, MAX_SLIP] **/
+    private static final double MAX_SLIP = 0.2;
+
+    /** The level of the generated problems **/
+    private Level level;
+    /** The number of cells in map **/
+    private int N;
+    /** Number of car types **/
+    private int CT;
+    /** Number of drivers **/
+    private int DT;
+    /** The maximum number of time-steps, 3 * N if not set **/
+    private int maxT;
+    /** Discount factor **/
+    private double discountFactor = 0.95;
+    /** Time to recover from a slip **/
+    private int slipRecoveryTime = 2;
+    /** Breakdown repair time **/
+    private int repairTime = 3;
+    /** Relative frequency of each terrain of the level, uniform if not set **/
+    private double[] terrainWeights;
+    /** Mean number of consecutive cells with the same terrain **/
+    private double meanRunLength = 3;
+
+    /**
+     * Construct a generator
+     *
+     * @param levelNumber level of the problems (1 to 5)
+     * @param N number of cells
+     * @param CT number of car types
+     * @param DT number of drivers
+     */
+    public ProblemGenerator(int levelNumber, int N, int CT, int DT) {
+        this.level = new Level(levelNumber);
+        if (N < level.get_NT() || CT < 1 || DT < 1) {
+            throw new IllegalArgumentException("Invalid problem size: N=" + N
+                    + " CT=" + CT + " DT=" + DT);
+        }
+        this.N = N;
+        this.CT = CT;
+        this.DT = DT;
+        this.maxT = 3 * N;
+    }
+
+    public void setMaxT(int maxT) {
+        this.maxT = maxT;
+    }
+
+    public void setDiscountFactor(double discountFactor) {
+        this.discountFactor = discountFactor;
+    }
+
+    public void setSlipRecoveryTime(int slipRecoveryTime) {
+        this.slipRecoveryTime = slipRecoveryTime;
+    }
+
+    public void setRepairTime(int repairTime) {
+        this.repairTime = repairTime;
+    }
+
+    /**
+     * Set the terrain mix
+     *
+     * @param terrainWeights relative frequency of each terrain, in the order
+     *                       of the level's terrain types
+     */
+    public void setTerrainWeights(double[] terrainWeights) {
+        if (terrainWeights.length != level.get_NT()) {
+            throw new IllegalArgumentException("Expected " + level.get_NT()
+                    + " terrain weights, got " + terrainWeights.length);
+        }
+        this.terrainWeights = terrainWeights.clone();
+    }
+
+    public void setMeanRunLength(double meanRunLength) {
+        if (meanRunLength < 1) {
+            throw new IllegalArgumentException("Mean run length must be at least 1: " + meanRunLength);
+        }
+        this.meanRunLength = meanRunLength;
+    }
+
+    /**
+     * Generate a problem and write it to a file
+     *
+     * @param file the file to write
+     * @param seed the seed of the random problem
+     * @throws IOException if the file can't be written
+     */
+    public void generate(Path file, long seed) throws IOException {
+        Random random = new Random(seed);
+        List<Terrain> terrains = level.getTerrainTypes();
+        int NT = terrains.size();
+        byte[] map = generateMap(random, NT);
+
+        try (BufferedWriter output = Files.newBufferedWriter(file)) {
+            output.write(level.getLevelNumber() + "\n");
+            output.write(String.format(Locale.ROOT, "%s %d %d\n",
+                    discountFactor, slipRecoveryTime, repairTime));
+            output.write(N + " " + maxT + "\n");
+            for (int t = 0; t < NT; t++) {
+                output.write(terrains.get(t).asString() + ":");
+                writeCellIndices(output, map, t);
+                output.write("\n");
+            }
+
+            output.write(CT + "\n");
+            for (int i = 0; i < CT; i++) {
+                output.write("car-" + (i + 1) + ":" + randomProbabilityRow(random) + "\n");
+            }
+            output.write(DT + "\n");
+            for (int i = 0; i < DT; i++) {
+                output.write("driver-" + (i + 1) + ":" + randomProbabilityRow(random) + "\n");
+            }
+            for (Tire tire : Tire.values()) {
+                output.write(tire.asString() + ":" + randomProbabilityRow(random) + "\n");
+            }
+
+            StringBuilder fuel = new StringBuilder();
+            for (int i = 0; i < NT * CT; i++) {
+                if (i > 0) {
+                    fuel.append(' ');
+                }
+                fuel.append(1 + random.nextInt(MAX_FUEL_USAGE));
+            }
+            output.write(fuel + "\n");
+
+            StringBuilder slip = new StringBuilder();
+            for (int t = 0; t < NT; t++) {
+                if (t > 0) {
+                    slip.append(' ');
+                }
+                slip.append(String.format(Locale.ROOT, "%.2f", random.nextDouble() * MAX_SLIP));
+            }
+            output.write(slip + "\n");
+        }
+    }
+
+    /**
+     * Draw the terrain of every cell as runs of the same terrain. Every
+     * terrain gets at least one cell, as the input format has no way to
+     * list an empty terrain.
+     *
+     * @return terrain index per cell
+     */
+    private byte[] generateMap(Random random, int NT) {
+        double[] cumulative = new double[NT];
+        double total = 0;
+        for (int t = 0; t < NT; t++) {
+            total += terrainWeights == null ? 1 : terrainWeights[t];
+            cumulative[t] = total;
+        }
+        byte[] map = new byte[N];
+        int cell = 0;
+        while (cell < N) {
+            double u = random.nextDouble() * total;
+            int terrain = 0;
+            while (terrain < NT - 1 && u >= cumulative[terrain]) {
+                terrain++;
+            }
+            // geometric run length with the given mean
+            int length = 1;
+            if (meanRunLength > 1) {
+                double stop = 1 / meanRunLength;
+                length += (int) Math.min(N, Math.floor(Math.log(1 - random.nextDouble())
+                        / Math.log(1 - stop)));
+            }
+            int end = Math.min(N, cell + length);
+            for (; cell < end; cell++) {
+                map[cell] = (byte) terrain;
+            }
+        }
+
+        boolean[] present = new boolean[NT];
+        for (byte terrain : map) {
+            present[terrain] = true;
+        }
+        for (int t = 0; t < NT; t++) {
+            while (!present[t]) {
+                int i = random.nextInt(N);
+                if (countOf(map, map[i]) > 1) {
+                    map[i] = (byte) t;
+                    present[t] = true;
+                }
+            }
+        }
+        return map;
+    }
+
+    private static int countOf(byte[] map, byte terrain) {
+        int count = 0;
+        for (byte b : map) {
+            if (b == terrain) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the cells of a terrain as comma separated indices and ranges,
+     * e.g. 1-3,5,7
+     */
+    private static void writeCellIndices(BufferedWriter output, byte[] map, int terrain)
+            throws IOException {
+        boolean first = true;
+        int i = 0;
+        while (i < map.length) {
+            if (map[i] != terrain) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < map.length && map[i] == terrain) {
+                i++;
+            }
+            if (!first) {
+                output.write(',');
+            }
+            first = false;
+            output.write(Integer.toString(start + 1));
+            if (i - 1 > start) {
+                output.write('-');
+                output.write(Integer.toString(i));
+            }
+        }
+    }
+
+    /**
+     * A random row of CAR_MOVE_RANGE probabilities summing to 1, weighted by
+     * MOVE_WEIGHTS
+     */
+    private static String randomProbabilityRow(Random random) {
+        double[] weights = new double[ProblemSpec.CAR_MOVE_RANGE];
+        double total = 0;
+        for (int k = 0; k < weights.length; k++) {
+            // exponential draws give a uniformly random point of the simplex
+            weights[k] = -Math.log(1 - random.nextDouble()) * MOVE_WEIGHTS[k];
+            total += weights[k];
+        }
+        // round to units, giving the leftover units to the largest remainders
+        int[] units = new int[weights.length];
+        double[] remainder = new double[weights.length];
+        int assigned = 0;
+        for (int k = 0; k < weights.length; k++) {
+            double exact = weights[k] / total * PROBABILITY_UNITS;
+            units[k] = (int) exact;
+            remainder[k] = exact - units[k];
+            assigned += units[k];
+        }
+        for (; assigned < PROBABILITY_UNITS; assigned++) {
+            int best = 0;
+            for (int k = 1; k < weights.length; k++) {
+                if (remainder[k] > remainder[best]) {
+                    best = k;
+                }
+            }
+            units[best]++;
+            remainder[best] = -1;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < units.length; k++) {
+            if (k > 0) {
+                sb.append(' ');
+            }
+            sb.append(String.format(Locale.ROOT, "%.3f", (double) units[k] / PROBABILITY_UNITS));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Usage: ProblemGenerator level N CT DT outputFile [seed] [maxT] [meanRunLength]
+     */
+    public static void main(String[] args) {
+        if (args.length < 5) {
+            System.out.println("Usage: ProblemGenerator level N CT DT outputFile [seed] [maxT] [meanRunLength]");
+            System.exit(1);
+        }
+        ProblemGenerator generator = new ProblemGenerator(Integer.parseInt(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : System.nanoTime();
+        if (args.length > 6) {
+            generator.setMaxT(Integer.parseInt(args[6]));
+        }
+        if (args.length > 7) {
+            generator.setMeanRunLength(Double.parseDouble(args[7]));
+        }
+        try {
+            generator.generate(Paths.get(args[4]), seed);
+        } catch (IOException e) {
+            System.out.println("IO Exception occurred: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package problem;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of loading a problem spec, from text or from the binary cache
+ */
+@Name("rtdp.ProblemLoad")
+@Label("Problem Load")
+@Category({"RTDP", "Problem"})
+@Description("A problem spec loaded from an input file or its cached binary form")
+class ProblemLoadEvent extends jdk.jfr.Event {
+
+    @Label("File")
+    String file;
+
+    @Label("From Cache")
+    @Description("Whether the binary form was read instead of the text")
+    boolean fromCache;
+
+    @Label("Level")
+    int level;
+
+    @Label("N")
+    @Description("Number of cells")
+    int cells;
+
+    @Label("Terrain Runs")
+    int terrainRuns;
+}
@@ -0,0 +1,354 @@
+package problem;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A cursor over a memory-mapped input file that parses tokens straight from
+ * the bytes. Numbers are parsed without creating Strings; every error is a
+ * ProblemFormatException with the line and column it happened at.
+ *
+ * The input is line based: tokens on a line are separated by spaces or tabs
+ * and endLine() must be called to move to the next line.
+ */
+class ProblemReader {
+
+    /** Powers of ten that are exact doubles **/
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /** Name of the file, for error messages **/
+    private String fileName;
+    /** The file content **/
+    private ByteBuffer buffer;
+    /** Size of the content in bytes **/
+    private int limit;
+    /** Offset of the next byte to read **/
+    private int position;
+    /** Current line, from 1, and the offset it starts at **/
+    private int line = 1;
+    private int lineStart;
+
+    /**
+     * Map a file for reading
+     *
+     * @param file the file
+     * @throws IOException if the file can't be read
+     */
+    ProblemReader(Path file) throws IOException {
+        this.fileName = file.toString();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(fileName + ": file too large (" + size + " bytes)");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            this.buffer = mapped;
+            this.limit = (int) size;
+        }
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Create an error at the current position
+     *
+     * @param message what was wrong
+     * @return the exception, to be thrown by the caller
+     */
+    ProblemFormatException error(String message) {
+        return errorAt(position, message);
+    }
+
+    /**
+     * Create an error at a given offset on the current line
+     */
+    ProblemFormatException errorAt(int offset, String message) {
+        return new ProblemFormatException(fileName, line, offset - lineStart + 1, message);
+    }
+
+    /**
+     * Create an error at a given line and column
+     */
+    ProblemFormatException errorAt(int line, int column, String message) {
+        return new ProblemFormatException(fileName, line, column, message);
+    }
+
+    /**
+     * Create an error at the start of a given line
+     */
+    ProblemFormatException errorAtLine(int line, String message) {
+        return errorAt(line, 1, message);
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the column of an offset on the current line
+     *
+     * @param offset the offset
+     * @return the column, from 1
+     */
+    int getColumn(int offset) {
+        return offset - lineStart + 1;
+    }
+
+    private boolean isSpace(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /** The next byte, or -1 at the end of a line or of the file **/
+    private int peek() {
+        if (position >= limit) {
+            return -1;
+        }
+        int c = buffer.get(position);
+        return c == '\n' || c == '\r' ? -1 : c;
+    }
+
+    /**
+     * Skip spaces and tabs
+     */
+    void skipSpaces() {
+        while (position < limit && isSpace(buffer.get(position))) {
+            position++;
+        }
+    }
+
+    /**
+     * Check if only spaces are left on the current line
+     */
+    boolean atLineEnd() {
+        skipSpaces();
+        return peek() == -1;
+    }
+
+    /**
+     * Move to the start of the next line, failing if the current line has
+     * tokens left
+     *
+     * @throws ProblemFormatException if there are tokens left
+     */
+    void endLine() throws ProblemFormatException {
+        if (!atLineEnd()) {
+            throw error("unexpected '" + (char) peek() + "', expected end of line");
+        }
+        if (position < limit && buffer.get(position) == '\r') {
+            position++;
+        }
+        if (position < limit && buffer.get(position) == '\n') {
+            position++;
+        }
+        line++;
+        lineStart = position;
+    }
+
+    /**
+     * Fail if the file ended before the current line
+     *
+     * @param what what the line should contain, for the error message
+     * @throws ProblemFormatException if the file ended
+     */
+    void expectLine(String what) throws ProblemFormatException {
+        if (position >= limit) {
+            throw error("file ended, expected " + what);
+        }
+    }
+
+    /**
+     * Consume the given character, after optional spaces
+     *
+     * @throws ProblemFormatException if the next character is different
+     */
+    void expect(char c) throws ProblemFormatException {
+        skipSpaces();
+        if (peek() != c) {
+            throw error("expected '" + c + "'" + found());
+        }
+        position++;
+    }
+
+    /**
+     * Consume the given character if it is next, after optional spaces
+     *
+     * @return true if it was consumed
+     */
+    boolean accept(char c) {
+        skipSpaces();
+        if (peek() == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read a name up to the next ':' (not consumed)
+     *
+     * @param what what the name is, for the error message
+     * @return the name, without surrounding spaces
+     * @throws ProblemFormatException if the name is empty or the line ends
+     */
+    String nextName(String what) throws ProblemFormatException {
+        skipSpaces();
+        int start = position;
+        int end = start;
+        while (peek() != -1 && peek() != ':') {
+            position++;
+            if (!isSpace(buffer.get(position - 1))) {
+                end = position;
+            }
+        }
+        if (end == start) {
+            throw errorAt(start, "expected " + what + found());
+        }
+        if (peek() != ':') {
+            throw error("expected ':' after " + what);
+        }
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a non-negative integer
+     *
+     * @param what what the number is, for the error message
+     * @return the number
+     * @throws ProblemFormatException if there is no integer or it overflows
+     */
+    int nextInt(String what) throws ProblemFormatException {
+        skipSpaces();
+        int start = position;
+        long value = 0;
+        while (position < limit && isDigit(buffer.get(position))) {
+            value = value * 10 + (buffer.get(position) - '0');
+            if (value > Integer.MAX_VALUE) {
+                throw errorAt(start, what + " is too large");
+            }
+            position++;
+        }
+        if (position == start) {
+            throw error("expected " + what + found());
+        }
+        if (peek() != -1 && !isSpace(peek()) && peek() != ',' && peek() != '-') {
+            throw error("unexpected '" + (char) peek() + "' in " + what);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Read a decimal number like 0.95, 5, -1.5e-3
+     *
+     * @param what what the number is, for the error message
+     * @return the number
+     * @throws ProblemFormatException if there is no number
+     */
+    double nextDouble(String what) throws ProblemFormatException {
+        skipSpaces();
+        int start = position;
+        boolean negative = false;
+        if (peek() == '-' || peek() == '+') {
+            negative = peek() == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean any = false;
+        while (position < limit && isDigit(buffer.get(position))) {
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (buffer.get(position) - '0');
+                if (mantissa > 0) {
+                    digits++;
+                }
+            } else {
+                scale--;
+            }
+            position++;
+        }
+        if (peek() == '.') {
+            position++;
+            while (position < limit && isDigit(buffer.get(position))) {
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (buffer.get(position) - '0');
+                    if (mantissa > 0) {
+                        digits++;
+                    }
+                    scale++;
+                }
+                position++;
+            }
+        }
+        if (!any) {
+            position = start;
+            throw error("expected " + what + found());
+        }
+        int exponent = 0;
+        if (peek() == 'e' || peek() == 'E') {
+            position++;
+            boolean negativeExponent = false;
+            if (peek() == '-' || peek() == '+') {
+                negativeExponent = peek() == '-';
+                position++;
+            }
+            int exponentStart = position;
+            while (position < limit && isDigit(buffer.get(position)) && exponent < 10000) {
+                exponent = exponent * 10 + (buffer.get(position) - '0');
+                position++;
+            }
+            if (position == exponentStart) {
+                throw error("expected exponent in " + what);
+            }
+            exponent = negativeExponent ? -exponent : exponent;
+        }
+        if (peek() != -1 && !isSpace(peek())) {
+            throw error("unexpected '" + (char) peek() + "' in " + what);
+        }
+
+        double value;
+        int power = exponent - scale;
+        if (digits <= 15 && Math.abs(power) < POWERS_OF_TEN.length) {
+            // both operands are exact, so the result is correctly rounded
+            value = power < 0 ? mantissa / POWERS_OF_TEN[-power] : mantissa * POWERS_OF_TEN[power];
+            return negative ? -value : value;
+        }
+        byte[] bytes = new byte[position - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /** Describes the next token for error messages **/
+    private String found() {
+        int c = peek();
+        if (c == -1) {
+            return position >= limit ? ", found end of file" : ", found end of line";
+        }
+        return ", found '" + (char) c + "'";
+    }
+}
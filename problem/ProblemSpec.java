@@ -1,9 +1,13 @@
 package problem;
 
-import java.io.BufferedReader;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import simulator.MoveModel;
+
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
@@ -43,11 +47,8 @@ public class ProblemSpec {
     private int maxT;
     /** Number of terrain types **/
     private int NT;
-    /** The environment map as a 1D array of terrains in order **/
-    private Terrain[] environmentMap;
-    /** The terrain map which maps terrains to their cell indices on the
-     * environment map */
-    private LinkedHashMap<Terrain, List<Integer>> terrainMap;
+    /** The environment map as runs of cells with the same terrain **/
+    private TerrainRuns terrainRuns;
     /** Ordering of terrain as they appear in input **/
     private List<Terrain> terrainOrder;
     /** Number of car types **/
@@ -73,163 +74,357 @@ public class ProblemSpec {
     private int[][] fuelUsage;
     /** Slip probability for each terrain for 50% tire pressure **/
     private double[] slipProbability;
+    /** Fuel consumption of a move by terrain, car and pressure, flattened as
+     *  (terrain * CT + car) * TIRE_PRESSURE_LEVELS + pressure **/
+    private int[] fuelConsumption;
+    /** γ^d for every duration d an outcome can take, slip, repair or refuel **/
+    private double[] discountPowers;
+    /** Every concrete action of the level, built once the rest is loaded **/
+    private ActionCatalog actionCatalog;
+    /** The move distributions and move rewards of the problem **/
+    private MoveModel moveModel;
 
     /**
      * Load problem spec from input file
      *
      * @param fileName path to input file
-     * @throws IOException if can't find file or there is a format error
+     * @throws IOException if can't read the file
+     * @throws ProblemFormatException if there is a format error, with its
+     *      position in the file
      */
     public ProblemSpec(String fileName) throws IOException {
+        ProblemLoadEvent event = new ProblemLoadEvent();
+        event.begin();
         loadProblem(fileName);
+        buildTables();
+        if (event.shouldCommit()) {
+            event.file = fileName;
+            event.level = level.getLevelNumber();
+            event.cells = N;
+            event.terrainRuns = terrainRuns.getRunCount();
+            event.commit();
+        }
     }
 
     /**
-     * Loads a problem from a problem text file.
+     * Loads a problem from a problem text file. The file is memory-mapped and
+     * parsed straight from its bytes.
      *
      * @param fileName
      *              the path of the text file to load.
      * @throws IOException
-     *              if the text file doesn't exist or doesn't meet the
-     *              assignment specifications.
+     *              if the text file can't be read
+     * @throws ProblemFormatException
+     *              if the text file doesn't meet the assignment
+     *              specifications, with the position of the error
      */
     private void loadProblem(String fileName) throws IOException {
-        String line;
-        String[] splitLine;
-        int lineNo = 0;
-        Scanner s;
-        try (BufferedReader input = new BufferedReader(new FileReader(fileName))) {
-
-            // 1. line 1
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            int levelNumber = s.nextInt();
-            level = new Level(levelNumber);
-            s.close();
-
-            // 2. line 2
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            discountFactor = s.nextDouble();
-            slipRecoveryTime = s.nextInt();
-            repairTime = s.nextInt();
-            s.close();
-
-            // 3. line 3
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            N = s.nextInt();
-            maxT = s.nextInt();
-            s.close();
-
-            // 4. line 4 to (3+NT)
-            NT = level.get_NT();
-            environmentMap = new Terrain[N];
-            terrainMap = new LinkedHashMap<>();
-            terrainOrder = new ArrayList<>();
-            List<Integer> terrainIndices;
-            for (int i = 0; i < NT; i++) {
-                line = input.readLine();
-                lineNo++;
-                splitLine = line.split(":");
-                // first part is name of terrain
-                Terrain terrain = parseTerrain(splitLine[0], lineNo);
-                terrainIndices = parseTerrainCellIndices(splitLine[1]);
-                terrainMap.put(terrain, terrainIndices);
-                for (Integer j: terrainIndices) {
-                    environmentMap[j-1] = terrain;
-                }
-                terrainOrder.add(terrain);
+        ProblemReader input = new ProblemReader(Paths.get(fileName));
+
+        // 1. line 1
+        input.expectLine("level number");
+        int start = input.getPosition();
+        int levelNumber = input.nextInt("level number");
+        if (levelNumber < 1 || levelNumber > 5) {
+            throw input.errorAt(start, "invalid level number " + levelNumber);
+        }
+        level = new Level(levelNumber);
+        input.endLine();
+
+        // 2. line 2
+        input.expectLine("discount factor, slip recovery time and repair time");
+        discountFactor = input.nextDouble("discount factor");
+        slipRecoveryTime = input.nextInt("slip recovery time");
+        repairTime = input.nextInt("repair time");
+        input.endLine();
+
+        // 3. line 3
+        input.expectLine("N and maxT");
+        start = input.getPosition();
+        N = input.nextInt("N");
+        if (N < 1) {
+            throw input.errorAt(start, "N must be positive");
+        }
+        maxT = input.nextInt("maxT");
+        input.endLine();
+
+        // 4. line 4 to (3+NT)
+        NT = level.get_NT();
+        terrainOrder = new ArrayList<>();
+        CellRanges ranges = new CellRanges();
+        int firstTerrainLine = input.getLine();
+        for (int i = 0; i < NT; i++) {
+            input.expectLine("terrain line");
+            start = input.getPosition();
+            // first part is name of terrain
+            Terrain terrain = parseTerrain(input.nextName("terrain"));
+            if (terrain == null) {
+                throw input.errorAt(start, "invalid terrain type");
             }
+            input.expect(':');
+            parseTerrainCellIndices(input, i, ranges);
+            terrainOrder.add(terrain);
+            input.endLine();
+        }
+        terrainRuns = ranges.toRuns(input, firstTerrainLine);
+
+        // 5. line (3+NT+1)
+        input.expectLine("number of car types");
+        CT = input.nextInt("number of car types");
+        input.endLine();
+
+        // 6. line (3+NT+2) to (3+NT+2+CT)
+        carMoveProbability = new LinkedHashMap<>();
+        carOrder = new ArrayList<>();
+        for (int i = 0; i < CT; i++) {
+            input.expectLine("car type line");
+            String car = input.nextName("car type");
+            carMoveProbability.put(car, parseProbLine(input));
+            carOrder.add(car);
+        }
 
-            // 5. line (3+NT+1)
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            CT = s.nextInt();
-            s.close();
-
-            // 6. line (3+NT+2) to (3+NT+2+CT)
-            String car;
-            carMoveProbability = new LinkedHashMap<>();
-            carOrder = new ArrayList<>();
-            for (int i = 0; i < CT; i++) {
-                line = input.readLine();
-                lineNo++;
-                car = parseProbLine(line, carMoveProbability);
-                carOrder.add(car);
-            }
+        // 7. Number of drivers line
+        input.expectLine("number of drivers");
+        DT = input.nextInt("number of drivers");
+        input.endLine();
+
+        // 8. Driver move probabilities
+        driverMoveProbability = new LinkedHashMap<>();
+        driverOrder = new ArrayList<>();
+        for (int i = 0; i < DT; i++) {
+            input.expectLine("driver line");
+            String driver = input.nextName("driver");
+            driverMoveProbability.put(driver, parseProbLine(input));
+            driverOrder.add(driver);
+        }
 
-            // 7. Number of drivers line
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            DT = s.nextInt();
-            s.close();
-
-            // 8. Driver move probabilities
-            String driver;
-            driverMoveProbability = new LinkedHashMap<>();
-            driverOrder = new ArrayList<>();
-            for (int i = 0; i < DT; i++) {
-                line = input.readLine();
-                lineNo++;
-                driver = parseProbLine(line, driverMoveProbability);
-                driverOrder.add(driver);
+        // 9. Tyre model move probabilities
+        tireModelMoveProbability = new LinkedHashMap<>();
+        tireOrder = new ArrayList<>();
+        for (int i = 0; i < NUM_TYRE_MODELS; i++) {
+            input.expectLine("tire model line");
+            start = input.getPosition();
+            Tire tire = parseTireModel(input.nextName("tire model"));
+            if (tire == null) {
+                throw input.errorAt(start, "invalid tire model");
             }
+            tireModelMoveProbability.put(tire, parseProbLine(input));
+            tireOrder.add(tire);
+        }
 
-            // 9. Tyre model move probabilities
-            Tire tire;
-            tireModelMoveProbability = new LinkedHashMap<>();
-            tireOrder = new ArrayList<>();
-            for (int i = 0; i < NUM_TYRE_MODELS; i++) {
-                line = input.readLine();
-                lineNo++;
-                tire = parseTireModelProbability(line, lineNo,
-                        tireModelMoveProbability);
-                tireOrder.add(tire);
+        // 10. Fuel usage by terrain and car matrix
+        fuelUsage = new int[NT][CT];
+        input.expectLine("fuel usage line");
+        for (int i = 0; i < NT; i++) {
+            for (int j = 0; j < CT; j++) {
+                fuelUsage[i][j] = input.nextInt("fuel usage");
             }
+        }
+        input.endLine();
+
+        // 11. Slip probability by terrain
+        slipProbability = new double[NT];
+        input.expectLine("slip probability line");
+        for (int i = 0; i < NT; i++) {
+            slipProbability[i] = input.nextDouble("slip probability");
+        }
+        input.endLine();
+    }
 
-            // 10. Fuel usage by terrain and car matrix
-            fuelUsage = new int[NT][CT];
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            for (int i = 0; i < NT; i++) {
-                for (int j = 0; j < CT; j++) {
-                    fuelUsage[i][j] = s.nextInt();
+    /**
+     * Build the tables derived from the loaded problem: the fuel consumption
+     * of every terrain, car and pressure, the discount of every duration,
+     * the action catalogue and the move model with every move distribution
+     */
+    private void buildTables() {
+        fuelConsumption = new int[NT * CT * TIRE_PRESSURE_LEVELS];
+        for (int terrain = 0; terrain < NT; terrain++) {
+            for (int car = 0; car < CT; car++) {
+                for (TirePressure pressure : TirePressure.values()) {
+                    fuelConsumption[(terrain * CT + car) * TIRE_PRESSURE_LEVELS + pressure.ordinal()] =
+                            fuelUsage[terrain][car] * pressure.getFuelMultiplier();
                 }
             }
-            s.close();
+        }
+        int maxDuration = Math.max(Math.max(slipRecoveryTime, repairTime),
+                (int) Math.ceil(FUEL_MAX / 10.0));
+        discountPowers = new double[maxDuration + 1];
+        discountPowers[0] = 1;
+        for (int d = 1; d <= maxDuration; d++) {
+            discountPowers[d] = discountPowers[d - 1] * discountFactor;
+        }
+        actionCatalog = new ActionCatalog(this);
+        moveModel = new MoveModel(this);
+    }
 
-            // 11. Slip probability by terrain
-            slipProbability = new double[NT];
-            line = input.readLine();
-            lineNo++;
-            s = new Scanner(line);
-            for (int i = 0; i < NT; i++) {
-                slipProbability[i] = s.nextDouble();
+    /**
+     * Construct an empty problem spec, filled in by readBinary
+     */
+    private ProblemSpec() {
+    }
 
+    /**
+     * Write the parsed problem in binary form: the scalar settings, the
+     * terrain, car, driver and tire tables in input order, the probability
+     * rows flattened, the fuel usage matrix, the slip vector and the terrain
+     * runs. Read back with readBinary.
+     *
+     * @param output the stream to write to
+     * @throws IOException if the stream can't be written
+     */
+    void writeBinary(DataOutputStream output) throws IOException {
+        output.writeInt(level.getLevelNumber());
+        output.writeDouble(discountFactor);
+        output.writeInt(slipRecoveryTime);
+        output.writeInt(repairTime);
+        output.writeInt(N);
+        output.writeInt(maxT);
+        for (Terrain terrain : terrainOrder) {
+            output.writeByte(terrain.ordinal());
+        }
+        writeNames(output, carOrder);
+        writeNames(output, driverOrder);
+        for (Tire tire : tireOrder) {
+            output.writeByte(tire.ordinal());
+        }
+        for (String car : carOrder) {
+            writeDoubles(output, carMoveProbability.get(car));
+        }
+        for (String driver : driverOrder) {
+            writeDoubles(output, driverMoveProbability.get(driver));
+        }
+        for (Tire tire : tireOrder) {
+            writeDoubles(output, tireModelMoveProbability.get(tire));
+        }
+        for (int[] row : fuelUsage) {
+            for (int fuel : row) {
+                output.writeInt(fuel);
             }
-            s.close();
-            input.close();
+        }
+        writeDoubles(output, slipProbability);
+        int runs = terrainRuns.getRunCount();
+        output.writeInt(runs);
+        for (int r = 0; r < runs; r++) {
+            output.writeInt(terrainRuns.getRunStart(r));
+        }
+        for (int r = 0; r < runs; r++) {
+            output.writeByte(terrainRuns.getRunTerrainIndex(r));
+        }
+    }
+
+    private static void writeNames(DataOutputStream output, List<String> names)
+            throws IOException {
+        output.writeInt(names.size());
+        for (String name : names) {
+            output.writeUTF(name);
+        }
+    }
+
+    private static void writeDoubles(DataOutputStream output, double[] values)
+            throws IOException {
+        for (double value : values) {
+            output.writeDouble(value);
+        }
+    }
+
+    /**
+     * Read a problem written by writeBinary
+     *
+     * @param input the buffer, positioned at the start of the problem
+     * @return the problem spec
+     * @throws BufferUnderflowException if the buffer ends early
+     * @throws IllegalArgumentException if the content is invalid
+     */
+    static ProblemSpec readBinary(ByteBuffer input) {
+        ProblemSpec ps = new ProblemSpec();
+        int levelNumber = input.getInt();
+        if (levelNumber < 1 || levelNumber > 5) {
+            throw new IllegalArgumentException("Invalid level number " + levelNumber);
+        }
+        ps.level = new Level(levelNumber);
+        ps.discountFactor = input.getDouble();
+        ps.slipRecoveryTime = input.getInt();
+        ps.repairTime = input.getInt();
+        ps.N = input.getInt();
+        ps.maxT = input.getInt();
+        ps.NT = ps.level.get_NT();
+        ps.terrainOrder = new ArrayList<>();
+        for (int i = 0; i < ps.NT; i++) {
+            ps.terrainOrder.add(Terrain.values()[input.get()]);
+        }
+        ps.carOrder = readNames(input);
+        ps.CT = ps.carOrder.size();
+        ps.driverOrder = readNames(input);
+        ps.DT = ps.driverOrder.size();
+        ps.tireOrder = new ArrayList<>();
+        for (int i = 0; i < NUM_TYRE_MODELS; i++) {
+            ps.tireOrder.add(Tire.values()[input.get()]);
+        }
+        ps.carMoveProbability = new LinkedHashMap<>();
+        for (String car : ps.carOrder) {
+            ps.carMoveProbability.put(car, readDoubles(input, CAR_MOVE_RANGE));
+        }
+        ps.driverMoveProbability = new LinkedHashMap<>();
+        for (String driver : ps.driverOrder) {
+            ps.driverMoveProbability.put(driver, readDoubles(input, CAR_MOVE_RANGE));
+        }
+        ps.tireModelMoveProbability = new LinkedHashMap<>();
+        for (Tire tire : ps.tireOrder) {
+            ps.tireModelMoveProbability.put(tire, readDoubles(input, CAR_MOVE_RANGE));
+        }
+        ps.fuelUsage = new int[ps.NT][ps.CT];
+        for (int[] row : ps.fuelUsage) {
+            input.asIntBuffer().get(row);
+            input.position(input.position() + 4 * row.length);
+        }
+        ps.slipProbability = readDoubles(input, ps.NT);
+        // a run is an int start and a byte terrain
+        int runs = readCount(input, 5);
+        int[] runStarts = new int[runs];
+        input.asIntBuffer().get(runStarts);
+        input.position(input.position() + 4 * runs);
+        byte[] runTerrains = new byte[runs];
+        input.get(runTerrains);
+        ps.terrainRuns = new TerrainRuns(ps.N, runStarts, runTerrains, ps.terrainOrder);
+        ps.buildTables();
+        return ps;
+    }
+
+    private static List<String> readNames(ByteBuffer input) {
+        // a name is at least its short length
+        int count = readCount(input, 2);
+        List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[input.getShort() & 0xffff];
+            input.get(bytes);
+            // names are plain text, where modified UTF-8 is the same as UTF-8
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return names;
+    }
 
-        } catch (InputMismatchException e) {
-            System.out.println(e.getMessage());
-            System.exit(1);
-        } catch (NoSuchElementException e) {
-            System.out.println("Not enough tokens on input file - line " + lineNo);
-            System.exit(2);
-        } catch (NullPointerException e) {
-            System.out.format("Input file - line %d expected, but file ended.", lineNo);
-            System.exit(3);
-        } catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-            System.exit(4);
+    /**
+     * Read the number of elements that follow, checking it against the bytes
+     * left so a damaged count can't cause a huge or negative allocation
+     *
+     * @param input the buffer
+     * @param minBytes the smallest size of an element in bytes
+     * @return the count
+     * @throws IllegalArgumentException if the buffer can't hold that many elements
+     */
+    private static int readCount(ByteBuffer input, int minBytes) {
+        int count = input.getInt();
+        if (count < 0 || count > input.remaining() / minBytes) {
+            throw new IllegalArgumentException("Invalid count " + count);
         }
+        return count;
+    }
+
+    private static double[] readDoubles(ByteBuffer input, int count) {
+        double[] values = new double[count];
+        input.asDoubleBuffer().get(values);
+        input.position(input.position() + 8 * count);
+        return values;
     }
 
     @Override
@@ -246,10 +441,13 @@ public class ProblemSpec {
         sb.append("maxT: ").append(maxT).append("\n");
         // 4.
         sb.append("Environment map: [");
-        for (int i = 0; i < environmentMap.length; i++) {
-            sb.append(environmentMap[i].asString());
-            if (i < environmentMap.length - 1)
-                sb.append(" | ");
+        for (int r = 0; r < terrainRuns.getRunCount(); r++) {
+            String terrain = terrainOrder.get(terrainRuns.getRunTerrainIndex(r)).asString();
+            for (int i = terrainRuns.getRunStart(r); i <= terrainRuns.getRunEnd(r); i++) {
+                sb.append(terrain);
+                if (i < N)
+                    sb.append(" | ");
+            }
         }
         sb.append("]\n");
         // 5. here lies the corpse of the tutor who started writing this
@@ -259,152 +457,168 @@ public class ProblemSpec {
     }
 
     /**
-     * Parse a line of the below form and add entry to map:
+     * Parse the rest of a line of the below form:
      *
      *      thingName : p0 p1 p2 ... p11
      *
      * where pi represents probability of ith possible car move distance,
-     * starting at -4 upto 5, then slip and breakdown.
+     * starting at -4 upto 5, then slip and breakdown. The name has already
+     * been read.
      *
-     * @param line the line text
-     * @param probMap map to add the entry to
-     * @return the name of thing
+     * @param input the reader, positioned at the ':'
+     * @return the probabilities
+     * @throws ProblemFormatException if the line is malformed or the
+     *      probabilities don't sum to 1
      */
-    private String parseProbLine(String line, Map<String, double[]> probMap) {
-        String[] splitLine = line.split(":");
-        String thingName = splitLine[0];
-        Scanner s = new Scanner(splitLine[1]);
+    private double[] parseProbLine(ProblemReader input) throws ProblemFormatException {
+        input.expect(':');
+        input.skipSpaces();
+        int start = input.getPosition();
         double[] probabilities = new double[CAR_MOVE_RANGE];
         double pSum = 0;
         for (int j = 0; j < CAR_MOVE_RANGE; j++) {
-            probabilities[j] = s.nextDouble();
+            probabilities[j] = input.nextDouble("move probability");
             pSum += probabilities[j];
         }
-        probMap.put(thingName, probabilities);
-        s.close();
-
         if (Math.abs(pSum - 1.0) > 0.001) {
-            throw new InputMismatchException("Car move probability does not sum to 1.0");
+            throw input.errorAt(start, "Car move probability does not sum to 1.0");
         }
-
-        return thingName;
+        input.endLine();
+        return probabilities;
     }
 
     /**
-     * Parse a line of the below form and add entry to map:
-     *
-     *      tireModel : p0 p1 p2 ... p11
-     *
-     * where pi represents probability of ith possible car move distance,
-     * starting at -4 upto 5, then slip and breakdown.
+     * Parse the cell indices of a terrain line, e.g. 1-3,5,7
      *
-     * @param line the line of text
-     * @param lineNo the line no
-     * @param probMap map to add entry to
-     * @return the tire model
+     * @param input the reader, positioned after the ':'
+     * @param terrainIndex index of the terrain of the line
+     * @param ranges the ranges to add the line's ranges to
+     * @throws ProblemFormatException if an index or range is invalid
      */
-    private Tire parseTireModelProbability(String line, int lineNo,
-                                           Map<Tire, double[]> probMap) {
-        String[] splitLine = line.split(":");
-        Tire tireModel = parseTireModel(splitLine[0], lineNo);
-        Scanner s = new Scanner(splitLine[1]);
-        double[] probabilities = new double[CAR_MOVE_RANGE];
-        double pSum = 0;
-        for (int j = 0; j < CAR_MOVE_RANGE; j++) {
-            probabilities[j] = s.nextDouble();
-            pSum += probabilities[j];
+    private void parseTerrainCellIndices(ProblemReader input, int terrainIndex,
+                                         CellRanges ranges) throws ProblemFormatException {
+        boolean first = true;
+        // an empty list means no terrain of this type
+        while (!input.atLineEnd()) {
+            if (!first) {
+                input.expect(',');
+            }
+            first = false;
+            input.skipSpaces();
+            int position = input.getPosition();
+            int start = input.nextInt("cell index");
+            int end = input.accept('-') ? input.nextInt("cell index") : start;
+            if (start < 1 || end > N) {
+                throw input.errorAt(position, "cell index out of range [1, " + N + "]");
+            }
+            if (end < start) {
+                throw input.errorAt(position, "empty cell range " + start + "-" + end);
+            }
+            ranges.add(start, end, terrainIndex, input.getLine(), input.getColumn(position));
         }
-        probMap.put(tireModel, probabilities);
-        s.close();
+    }
 
-        if (Math.abs(pSum - 1.0) > 0.001) {
-            throw new InputMismatchException("Car move probability does not sum to 1.0");
+    /**
+     * The cell ranges of the terrain lines, in input order, with their
+     * position in the file for error messages
+     */
+    private class CellRanges {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private byte[] terrains = new byte[16];
+        private int[] lines = new int[16];
+        private int[] columns = new int[16];
+        private int size;
+
+        void add(int start, int end, int terrainIndex, int line, int column) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                terrains = Arrays.copyOf(terrains, size * 2);
+                lines = Arrays.copyOf(lines, size * 2);
+                columns = Arrays.copyOf(columns, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            terrains[size] = (byte) terrainIndex;
+            lines[size] = line;
+            columns[size] = column;
+            size++;
         }
 
-        return tireModel;
+        /**
+         * Sort the ranges along the track and merge neighbouring ranges of
+         * the same terrain into runs
+         *
+         * @param input the reader, for error messages
+         * @param firstTerrainLine line of the first terrain line
+         * @return the runs
+         * @throws ProblemFormatException if ranges overlap or a cell has no
+         *      terrain
+         */
+        TerrainRuns toRuns(ProblemReader input, int firstTerrainLine)
+                throws ProblemFormatException {
+            // sort range numbers by start cell
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) starts[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int[] runStarts = new int[size];
+            byte[] runTerrains = new byte[size];
+            int runs = 0;
+            int next = 1;
+            for (long key : order) {
+                int i = (int) key;
+                if (starts[i] < next) {
+                    throw input.errorAt(lines[i], columns[i], "cell " + starts[i]
+                            + " already has a terrain");
+                }
+                if (starts[i] > next) {
+                    break;
+                }
+                if (runs == 0 || runTerrains[runs - 1] != terrains[i]) {
+                    runStarts[runs] = starts[i];
+                    runTerrains[runs] = terrains[i];
+                    runs++;
+                }
+                next = ends[i] + 1;
+            }
+            if (next <= N) {
+                throw input.errorAtLine(firstTerrainLine, "cell " + next + " has no terrain");
+            }
+            return new TerrainRuns(N, Arrays.copyOf(runStarts, runs),
+                    Arrays.copyOf(runTerrains, runs), terrainOrder);
+        }
     }
 
     /**
-     * Parse a terrain and cell index of terrain line from input
+     * Get the tire model with the given name
      *
-     * @param indexText the indeces part of the line text
-     * @return list of indices for given terrain
+     * @return the tire model, null if the name is invalid
      */
-    private List<Integer> parseTerrainCellIndices(String indexText) {
-
-        List<Integer> indices = new ArrayList<>();
-
-        String[] splitText = indexText.split(",");
-        String[] splitIndices;
-        int start, end;
-
-        for (String s: splitText) {
-            splitIndices = s.split("-");
+    private Tire parseTireModel(String tireText) {
+        for (Tire tire : Tire.values()) {
+            if (tire.asString().equals(tireText)) {
+                return tire;
+            }
+        }
+        return null;
+    }
 
-            if (splitIndices.length == 1) {
-                indices.add(Integer.parseInt(splitIndices[0]));
-            } else if (splitIndices.length == 2) {
-                start = Integer.parseInt(splitIndices[0]);
-                end = Integer.parseInt(splitIndices[1]);
-                for (int i = start; i <= end; i++) {
-                    indices.add(i);
-                }
+    /**
+     * Get the terrain with the given name
+     *
+     * @return the terrain, null if the name is invalid
+     */
+    private Terrain parseTerrain(String terrainText) {
+        for (Terrain terrain : Terrain.values()) {
+            if (terrain.asString().equals(terrainText)) {
+                return terrain;
             }
-            // else empty so no terrain of this type
-        }
-        return indices;
-    }
-
-    private Tire parseTireModel(String tireText, int lineNo) {
-        switch (tireText) {
-            case "all-terrain":
-                return Tire.ALL_TERRAIN;
-            case "mud":
-                return Tire.MUD;
-            case "low-profile":
-                return Tire.LOW_PROFILE;
-            case "performance":
-                return Tire.PERFORMANCE;
-            default:
-                String errMsg = "Invalid tyre type " + tireText + "on line " + lineNo;
-                throw new InputMismatchException(errMsg);
-        }
-    }
-
-    private Terrain parseTerrain(String terrainText, int lineNo) {
-        switch (terrainText) {
-            case "dirt":
-                return Terrain.DIRT;
-            case "asphalt":
-                return Terrain.ASPHALT;
-            case "dirt-straight":
-                return Terrain.DIRT_STRAIGHT;
-            case "dirt-slalom":
-                return Terrain.DIRT_SLALOM;
-            case "asphalt-straight":
-                return Terrain.ASPHALT_STRAIGHT;
-            case "asphalt-slalom":
-                return Terrain.ASPHALT_SLALOM;
-            case "dirt-straight-hilly":
-                return Terrain.DIRT_STRAIGHT_HILLY;
-            case "dirt-straight-flat":
-                return Terrain.DIRT_STRAIGHT_FLAT;
-            case "dirt-slalom-hilly":
-                return Terrain.DIRT_SLALOM_HILLY;
-            case "dirt-slalom-flat":
-                return Terrain.DIRT_SLALOM_FLAT;
-            case "asphalt-straight-hilly":
-                return Terrain.ASPHALT_STRAIGHT_HILLY;
-            case "asphalt-straight-flat":
-                return Terrain.ASPHALT_STRAIGHT_FLAT;
-            case "asphalt-slalom-hilly":
-                return Terrain.ASPHALT_SLALOM_HILLY;
-            case "asphalt-slalom-flat":
-                return Terrain.ASPHALT_SLALOM_FLAT;
-            default:
-                String errMsg = "Invalid terrain type " + terrainText + "on line " + lineNo;
-                throw new InputMismatchException(errMsg);
         }
+        return null;
     }
 
     public Level getLevel() {
@@ -415,6 +629,20 @@ public class ProblemSpec {
         return discountFactor;
     }
 
+    /**
+     * Get the discount of an outcome that takes a number of steps, so that
+     * a slip, a repair or refuelling is discounted once per step it takes
+     *
+     * @param duration the number of steps, at least 0
+     * @return γ^duration
+     */
+    public double getDiscount(int duration) {
+        if (duration < discountPowers.length) {
+            return discountPowers[duration];
+        }
+        return Math.pow(discountFactor, duration);
+    }
+
     public int getSlipRecoveryTime() {
         return slipRecoveryTime;
     }
@@ -435,8 +663,28 @@ public class ProblemSpec {
         return NT;
     }
 
-    public Terrain[] getEnvironmentMap() {
-        return environmentMap;
+    public TerrainRuns getTerrainRuns() {
+        return terrainRuns;
+    }
+
+    /**
+     * Get the terrain of a cell
+     *
+     * @param pos the cell, from 1 to N
+     * @return the terrain
+     */
+    public Terrain getTerrain(int pos) {
+        return terrainRuns.getTerrain(pos);
+    }
+
+    /**
+     * Get the index of the terrain of a cell, as the terrain appeared in input
+     *
+     * @param pos the cell, from 1 to N
+     * @return index of the cell's terrain
+     */
+    public int getTerrainIndexOfCell(int pos) {
+        return terrainRuns.getTerrainIndex(pos);
     }
 
     public int getCT() {
@@ -455,10 +703,6 @@ public class ProblemSpec {
         return carOrder;
     }
 
-    public LinkedHashMap<Terrain, List<Integer>> getTerrainMap() {
-        return terrainMap;
-    }
-
     public LinkedHashMap<String, double[]> getDriverMoveProbability() {
         return driverMoveProbability;
     }
@@ -479,6 +723,42 @@ public class ProblemSpec {
         return fuelUsage;
     }
 
+    /**
+     * Get the fuel a move consumes, the fuel usage of the terrain and car
+     * times the multiplier of the pressure
+     *
+     * @param terrainIndex the terrain index
+     * @param carIndex the car index
+     * @param pressure the tire pressure
+     * @return fuel consumption
+     */
+    public int getFuelConsumption(int terrainIndex, int carIndex, TirePressure pressure) {
+        return fuelConsumption[(terrainIndex * CT + carIndex) * TIRE_PRESSURE_LEVELS + pressure.ordinal()];
+    }
+
+    /**
+     * Get the fuel consumption of every terrain, car and pressure
+     *
+     * @return the consumptions, flattened as
+     *      (terrain * CT + car) * TIRE_PRESSURE_LEVELS + pressure ordinal
+     */
+    public int[] getFuelConsumptions() {
+        return fuelConsumption;
+    }
+
+    public ActionCatalog getActionCatalog() {
+        return actionCatalog;
+    }
+
+    /**
+     * Get the move model of the problem, shared by all its simulators
+     *
+     * @return the move model
+     */
+    public MoveModel getMoveModel() {
+        return moveModel;
+    }
+
     public double[] getSlipProbability() {
         return slipProbability;
     }
@@ -0,0 +1,178 @@
+package problem;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A directory of problem specs in binary form, keyed by the SHA-256 of their
+ * input file. Loading an input file that was loaded before maps its binary
+ * form instead of parsing the text again; otherwise the text is parsed and
+ * the binary form written for next time.
+ *
+ * A cache file is the magic number, the format version, the hash of the
+ * source and the length and CRC-32 of the payload, followed by the payload,
+ * the spec written by ProblemSpec.writeBinary. Files with a different
+ * version or hash, a payload that doesn't match its length or checksum, or
+ * that can't be read otherwise are replaced.
+ */
+public class ProblemSpecCache {
+
+    /** "RTDP" **/
+    private static final int MAGIC = 0x52544450;
+    /** Version of the binary form, bump when writeBinary changes **/
+    private static final int VERSION = 2;
+    /** Length of the SHA-256 hash in bytes **/
+    private static final int HASH_LENGTH = 32;
+
+    /** Directory of the cache files **/
+    private Path directory;
+
+    /**
+     * Construct a cache
+     *
+     * @param directory directory of the cache files, created when first
+     *                  written to
+     */
+    public ProblemSpecCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Load a problem spec, from the cache if possible
+     *
+     * @param input the input file
+     * @return the problem spec
+     * @throws IOException if the input can't be read
+     * @throws ProblemFormatException if the input has a format error
+     */
+    public ProblemSpec load(Path input) throws IOException {
+        byte[] hash = hashFile(input);
+        Path cacheFile = directory.resolve(toHex(hash) + ".spec");
+        if (Files.isRegularFile(cacheFile)) {
+            ProblemLoadEvent event = new ProblemLoadEvent();
+            event.begin();
+            ProblemSpec ps = read(cacheFile, hash);
+            if (ps != null) {
+                if (event.shouldCommit()) {
+                    event.file = input.toString();
+                    event.fromCache = true;
+                    event.level = ps.getLevel().getLevelNumber();
+                    event.cells = ps.getN();
+                    event.terrainRuns = ps.getTerrainRuns().getRunCount();
+                    event.commit();
+                }
+                return ps;
+            }
+        }
+        ProblemSpec ps = new ProblemSpec(input.toString());
+        write(ps, cacheFile, hash);
+        return ps;
+    }
+
+    /**
+     * Read a cache file with a single mapped read
+     *
+     * @return the problem spec, null if the file is stale or damaged
+     */
+    private ProblemSpec read(Path cacheFile, byte[] hash) throws IOException {
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            ByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (input.getInt() != MAGIC || input.getInt() != VERSION) {
+                return null;
+            }
+            byte[] storedHash = new byte[HASH_LENGTH];
+            input.get(storedHash);
+            if (!Arrays.equals(storedHash, hash)) {
+                return null;
+            }
+            int length = input.getInt();
+            long checksum = input.getLong();
+            if (length != input.remaining()) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(input.duplicate());
+            if (crc.getValue() != checksum) {
+                return null;
+            }
+            return ProblemSpec.readBinary(input);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                | IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a cache file. It is written to a temporary file first and moved
+     * into place, so concurrent loads never see a partial file.
+     */
+    private void write(ProblemSpec ps, Path cacheFile, byte[] hash) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(payload)) {
+            ps.writeBinary(output);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.toByteArray());
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, "spec", ".tmp");
+        try {
+            try (DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.write(hash);
+                output.writeInt(payload.size());
+                output.writeLong(crc.getValue());
+                payload.writeTo(output);
+            }
+            try {
+                Files.move(temp, cacheFile, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, cacheFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Hash a file through a mapped buffer
+     *
+     * @return the SHA-256 of the content
+     */
+    private static byte[] hashFile(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        return digest.digest();
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
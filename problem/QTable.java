@@ -0,0 +1,157 @@
+package problem;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The value table of a solver together with a cache of the Q-values of each
+ * state. Every value carries a version stamp, the clock of its last change.
+ * The Q-values of a state remember the clock they were computed at and the
+ * entries of their successors, so a Q-value only needs to be computed again
+ * when one of its successors has a newer version, and the greedy action of
+ * a state whose successors didn't change is the cached one.
+ *
+ * The table also keeps the largest value seen at each position, which
+ * bounds the Q-value of an action without evaluating it.
+ */
+class QTable {
+
+    /**
+     * The value of a state and its cached Q-values
+     */
+    static final class Entry {
+        /** V(s), the heuristic estimate until the first backup **/
+        double value;
+        /** Whether the value was backed up at least once **/
+        boolean backedUp;
+        /** Clock of the last change of the value, 0 if it never changed **/
+        long version;
+        /** Position of the state **/
+        int position;
+
+        /** The codes of the actions of the state, null until the Q-values are first computed **/
+        int[] actions;
+        /** R(s, a) of each action **/
+        double[] rewards;
+        /** The entries of the successors of each action and their weights,
+         *  P(s'|s,a) * γ^d(s,a,s') for an outcome taking d steps, null until the
+         *  action is first evaluated **/
+        Entry[][] successors;
+        double[][] weights;
+        /** Q(s, a) of each action, NaN if not evaluated or pruned since **/
+        double[] q;
+        /** Clock the Q-values were last brought up to date at **/
+        long computedAt;
+        /** Positions of the actions by decreasing reward, the order they are tried in **/
+        int[] order;
+        /** Position of the greedy action, -1 if no action has a finite value **/
+        int best = -1;
+
+        Entry(int position, double value) {
+            this.position = position;
+            this.value = value;
+        }
+
+        /**
+         * Check whether a successor of an action changed since the Q-values
+         * were computed
+         *
+         * @param i the position of the action
+         * @return true if Q(s, a) must be computed again
+         */
+        boolean isStale(int i) {
+            for (Entry successor : successors[i]) {
+                if (successor.version > computedAt) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Entries by state key **/
+    private final Map<Long, Entry> entries = new HashMap<>();
+    /** Incremented on every value change **/
+    private long clock;
+    /** The largest value ever set at each position, an upper bound of the values there **/
+    private double[] positionMax;
+
+    /**
+     * Construct an empty table
+     *
+     * @param N the number of cells
+     */
+    QTable(int N) {
+        positionMax = new double[N + 1];
+        Arrays.fill(positionMax, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Get the entry of a state key
+     *
+     * @param key the key
+     * @return the entry, null if the state has none yet
+     */
+    Entry get(long key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Add an entry for a state key
+     *
+     * @param key the key
+     * @param position the position of the state
+     * @param value the initial value of the state
+     * @return the new entry
+     */
+    Entry add(long key, int position, double value) {
+        Entry entry = new Entry(position, value);
+        entries.put(key, entry);
+        positionMax[position] = Math.max(positionMax[position], value);
+        return entry;
+    }
+
+    /**
+     * Set the value of a state, stamping it with a new version if it changed
+     *
+     * @param entry the entry of the state
+     * @param value the new value
+     */
+    void setValue(Entry entry, double value) {
+        if (Double.compare(entry.value, value) != 0) {
+            entry.value = value;
+            entry.version = ++clock;
+            positionMax[entry.position] = Math.max(positionMax[entry.position], value);
+        }
+        entry.backedUp = true;
+    }
+
+    /**
+     * Get an upper bound of the values of the states at a position
+     *
+     * @param position the position
+     * @return the largest value ever set at the position, negative infinity
+     *      if there is none
+     */
+    double getMaxValue(int position) {
+        return positionMax[position];
+    }
+
+    long getClock() {
+        return clock;
+    }
+
+    /**
+     * Get the number of states with an entry
+     *
+     * @return number of entries
+     */
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+}
@@ -3,60 +3,134 @@ package problem;
 import simulator.Simulator;
 import simulator.State;
 import simulator.Step;
-import java.util.Map;
-import java.util.HashMap;
+import simulator.Transition;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
-public class RTDPSolver {
+public class RTDPSolver implements Solver {
+    public static final double GOAL_VALUE = 100; // value of the goal states
+    public static final int DEFAULT_FRONTIER_CAPACITY = 64; // states the trial frontier holds
+    private static final Action MOVE = new Action(ActionType.MOVE);
     private ProblemSpec problemSpec;
     private Simulator simulator;
-    private double discountFactor; // discount factor
+    private ActionCatalog catalog; // the actions of the level by code
+    private int[] actionCodes; // receives the codes of the actions of a state
     private State initialState; // initial state
-    private Map<State, Double> stateValues; // state values
-    private Set<State> solvedStates = new HashSet<>();// solved states
+    private StateIndex stateIndex; // keys of the states in the value table, by default without the dimensions the level doesn't use
+    private long initialKey; // key of the initial state
+    private QTable table; // state values by state key, with the cached Q-values of each state
+    private final QTable.Entry goal = new QTable.Entry(0, GOAL_VALUE); // entry of the goal states, one per solver as entries are mutable
+    private final IntSupplier tableSize = () -> table.size(); // size of the value table, reported in the metrics
+    private double[] heuristicBounds; // largest heuristic value on each terrain, NaN until computed
+    private Set<Long> solvedStates = new HashSet<>();// keys of the solved states
+    private boolean labeled; // whether solve runs labeled RTDP
+    private double epsilon = 0.01; // residual below which a state is solved
+    private long timeBudgetMillis; // planning time, 0 for no limit
+    private long maxTrials; // planning trials, 0 for no limit
+    private long planningDeadline; // System.nanoTime when planning must stop
+    private SolverMetrics metrics = new SolverMetrics(); // counters of the work done
+    private Consumer<ConvergenceRecord> convergenceSink; // receives a record per trial, may be null
+    private long startNanos = System.nanoTime(); // when the solver was created
+    private long trials; // number of trials run
+    private double frontierFraction; // fraction of planning trials that start from the frontier
+    private TrialFrontier frontier = new TrialFrontier(DEFAULT_FRONTIER_CAPACITY); // states with the largest residuals, to start trials from
+    private double trialMaxResidual; // largest Bellman residual of the current trial
+    private double trialResidualSum; // sum of the Bellman residuals of the current trial
+    private long trialBackups; // backups of the current trial
 
     public RTDPSolver(ProblemSpec spec, Simulator simulator, State initialState) {
+        this(spec, simulator, initialState, false);
+    }
+
+    /**
+     * Construct a solver
+     * @param spec the problem spec
+     * @param simulator the simulator to act on
+     * @param initialState the state trials start from
+     * @param labeled true for labeled RTDP, false for plain RTDP
+     */
+    public RTDPSolver(ProblemSpec spec, Simulator simulator, State initialState, boolean labeled) {
         this.problemSpec = spec;
         this.simulator = simulator;
-        this.discountFactor = problemSpec.getDiscountFactor();
+        this.catalog = spec.getActionCatalog();
+        this.actionCodes = new int[catalog.size()];
         this.initialState = initialState;
-        this.stateValues = new HashMap<>();
-        stateValues.put(initialState, 0.0); // initialize the value of the initial state, V(s0) = 0
+        this.labeled = labeled;
+        this.stateIndex = new AbstractStateIndex(spec, false);
+        this.initialKey = stateIndex.keyOf(initialState);
+        this.table = new QTable(spec.getN());
+        metrics.addValueTable(tableSize);
+        this.heuristicBounds = new double[spec.getNT()];
+        Arrays.fill(heuristicBounds, Double.NaN);
     }
 
+    @Override
+    public String getName() {
+        return labeled ? "lrtdp" : "rtdp";
+    }
 
     /**
-     * Run the labeled RTDP algorithm
+     * Run planning trials on headless copies of the simulator until the time
+     * budget or the trial limit is reached, or, for labeled RTDP, until the
+     * initial state is solved. Without either limit no trials are run.
+     *
+     * With a frontier fraction, that fraction of the trials, spread evenly,
+     * start from the state of the frontier with the largest residual instead
+     * of the initial state, so trials don't walk through the converged early
+     * cells of the track again to reach the states whose values still change.
      */
-    public void runLabeledRTDP() {
-        State currentState = initialState; // initialize the current state
-        while (!simulator.isGoalState(currentState) ) {  // while the current state is not the goal state
-
-            // if current state is labeled as solved, break the loop
-            if (solvedStates.contains(currentState)) {
-                // if the current state is solved, break the loop
+    @Override
+    public void plan() {
+        if (timeBudgetMillis <= 0 && maxTrials <= 0) {
+            return;
+        }
+        planningDeadline = System.nanoTime() + timeBudgetMillis * 1_000_000;
+        for (long trial = 0; maxTrials <= 0 || trial < maxTrials; trial++) {
+            if (isOutOfTime() || (labeled && solvedStates.contains(initialKey))) {
                 break;
             }
-            // greedy choose the best action
-            Action bestAction = getGreedyAction(currentState);
-            // System.out.println("RTDPSolver---runRTDP: best action: " + bestAction.getActionType());
-            
-            // perform the best action and get the next state
-            State nextState = simulator.step(bestAction);
-
-            // update the value of the current state
-            updateValue(currentState, bestAction);
+            State start = initialState;
+            if (Math.floor((trial + 1) * frontierFraction) > Math.floor(trial * frontierFraction)) {
+                start = pollFrontier();
+            }
+            runTrial(simulator.copySimulator(start), start, labeled, true);
+        }
+    }
 
-            // check if the current state is solved, if so, add it to the solved states
-            if (isSolved(currentState)) {
-                solvedStates.add(currentState);  // add the current state to the solved states
+    // the state of the frontier with the largest residual that isn't solved, the initial state if there is none
+    private State pollFrontier() {
+        for (State state = frontier.pollMax(); state != null; state = frontier.pollMax()) {
+            if (!simulator.isGoalState(state)
+                    && !(labeled && solvedStates.contains(stateIndex.keyOf(state)))) {
+                return state;
             }
+        }
+        return initialState;
+    }
 
-            // update the current state
-            currentState = nextState;
+    /**
+     * Plan, then run a trial of the algorithm on the simulator
+     * @return the number of steps to reach the goal, -1 if not reached
+     */
+    @Override
+    public int solve() {
+        plan();
+        runTrial(simulator, initialState, labeled, false);
+        if (simulator.isGoalState(simulator.getCurrentState())) {
+            return simulator.getSteps();
         }
+        return -1;
+    }
+
+    /**
+     * Run the labeled RTDP algorithm
+     */
+    public void runLabeledRTDP() {
+        runTrial(simulator, initialState, true, false);
     }
 
 
@@ -64,39 +138,105 @@ public class RTDPSolver {
      * Run the normal RTDP algorithm
      */
     public void runRTDP() {
-        State currentState = initialState; // initialize the current state
-        while (!simulator.isGoalState(currentState) ) {  // while the current state is not the goal state
+        runTrial(simulator, initialState, false, false);
+    }
+
+    /**
+     * Run a trial from a state until the goal state
+     * @param model the simulator to act on, a headless copy for planning
+     * @param start the state the model is in, the initial state but for frontier trials
+     * @param labeled whether to label solved states
+     * @param planning whether this is a planning trial. Planning trials end at
+     *                 solved states and when the time budget runs out; other
+     *                 trials act greedily in solved states without backups.
+     */
+    private void runTrial(Simulator model, State start, boolean labeled, boolean planning) {
+        TrialEvent event = new TrialEvent();
+        event.begin();
+        long backupsBefore = metrics.getBackups();
+        startTrial();
+        State currentState = start; // initialize the current state
+        long trialSteps = 0;
+        while (!model.isGoalState(currentState) ) {  // while the current state is not the goal state
 
+            // if current state is labeled as solved, its value won't change any more
+            boolean solved = labeled && solvedStates.contains(stateIndex.keyOf(currentState));
+            if (planning && (solved || isOutOfTime())) {
+                break;
+            }
             // greedy choose the best action
-            Action bestAction = getGreedyAction(currentState);
-            // System.out.println("RTDPSolver---runRTDP: best action: " + bestAction.getActionType());
+            int bestAction = getGreedyActionCode(currentState);
+            if (bestAction < 0) {
+                // no action has a finite value, i.e. max time steps exceeded
+                break;
+            }
             
             // perform the best action and get the next state
-            State nextState = simulator.step(bestAction);
+            State nextState = model.step(bestAction);
+            if (nextState == null) {
+                // max time steps exceeded, the simulator has written its output
+                break;
+            }
 
-            // update the value of the current state
-            updateValue(currentState, bestAction);
+            if (!solved) {
+                // update the value of the current state
+                updateValue(currentState, bestAction);
+
+                // check if the current state is solved, if so, add it to the solved states
+                if (labeled && isSolved(currentState)
+                        && solvedStates.add(stateIndex.keyOf(currentState))) {
+                    metrics.recordStateSolved();
+                }
+            }
 
             // update the current state
             currentState = nextState;
+            trialSteps++;
+        }
+        metrics.recordTrial(trialSteps);
+        endTrial(trialSteps);
+        if (event.shouldCommit()) {
+            event.labeled = labeled;
+            event.startPosition = start.getPos();
+            event.endPosition = currentState.getPos();
+            event.steps = trialSteps;
+            event.backups = metrics.getBackups() - backupsBefore;
+            event.goalReached = model.isGoalState(currentState);
+            event.commit();
         }
     }
 
+    // whether the planning time budget has run out
+    private boolean isOutOfTime() {
+        return timeBudgetMillis > 0 && System.nanoTime() - planningDeadline >= 0;
+    }
+
     /**
      * Check if the state is solved
      * @param state
      * @return
      */
     private boolean isSolved(State state) {
-        // get the old value and the new value of the current state
-        double oldValue = stateValues.getOrDefault(state, 0.0);
-        double newValue = computeActionValue(state, getGreedyAction(state));
+        CheckSolvedEvent event = new CheckSolvedEvent();
+        event.begin();
+        // get the old value and the new value of the current state,
+        // the Q-values are cached, so only the actions leading back to the state are evaluated again
+        QTable.Entry entry = entryOf(state);
+        double oldValue = entry.value;
+        double newValue = getGreedyActionCode(state) < 0 ? Double.NEGATIVE_INFINITY : entry.q[entry.best];
         
         // judge if the value change is less than the threshold epsilon
         // if it is less than the threshold epsilon, return true
         // otherwise, return false
-        double epsilon = 0.01;  // threshold epsilon
-        return Math.abs(newValue - oldValue) < epsilon;
+        boolean solved = Math.abs(newValue - oldValue) < epsilon;
+        if (event.shouldCommit()) {
+            event.position = state.getPos();
+            event.residual = Math.abs(newValue - oldValue);
+            event.solved = solved;
+            event.backups = metrics.getBackups();
+            event.commit();
+        }
+        return solved;
     }
     
 
@@ -104,198 +244,376 @@ public class RTDPSolver {
      * Get the greedy action, which is the action with the maximum expected value
      * 
      * @param state
-     * @return
+     * @return the greedy action, null if no action has a finite value
+     */
+    public Action getGreedyAction(State state) {
+        int bestAction = getGreedyActionCode(state);
+        return bestAction < 0 ? null : catalog.getAction(bestAction);
+    }
+
+    /**
+     * Get the code of the greedy action in the problem's ActionCatalog
+     *
+     * @param state
+     * @return the code of the greedy action, -1 if no action has a finite value
      */
-    private Action getGreedyAction(State state) {
+    public int getGreedyActionCode(State state) {
+        GreedyActionEvent event = new GreedyActionEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int bestAction = findGreedyAction(state);
+        metrics.recordGreedyLatency(System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.position = state.getPos();
+            event.actionType = bestAction < 0 ? 0 : catalog.getType(bestAction).getActionNo();
+            event.backups = metrics.getBackups();
+            event.commit();
+        }
+        return bestAction;
+    }
+
+    private int findGreedyAction(State state) {
+        QTable.Entry entry = entryOf(state);
+        if (entry.actions == null) {
+            initActions(state, entry);
+        }
+        // branch and bound: Q(s, a) <= R(s, a) + γ^d max V(s'), and max V(s') is at most the
+        // largest value at the positions s' can have, or the largest heuristic value there if
+        // s' has no value yet. Only MOVE changes the position, so MOVE is evaluated first and
+        // the other actions, which stay and take d = duration(a) steps, by decreasing reward,
+        // skipping those whose bound can't beat the best action so far
+        double stayValue = Math.max(table.getMaxValue(state.getPos()), heuristicBound(state.getPos()));
         double maxValue = Double.NEGATIVE_INFINITY;
-        Action bestAction = null;
-
-        List<ActionType> actionTypes = problemSpec.getLevel().getAvailableActions();
-        // System.out.println("RTDPSolver---getGreedyAction: fqq actionTypes size: " + actionTypes.size());
-        double expectedValue = 0.0;
-        Action action = null;
-
-        // tour all the available actions, performA1 to performA8
-        // get the expected value of each action, and choose the action with the maximum expected value
-        for (ActionType actionType: actionTypes) {
-
-            // calculate Q(s, a) = R(s, a) + γ ∑ P(s'|s,a) * V(s')
-            // System.out.println("RTDPSolver---getGreedyAction: fqq current action: " + actionType);
-            if (actionType == ActionType.MOVE ) {
-                if (!simulator.isValidFuelToMove(state.getFuel())){
-                    expectedValue = Double.NEGATIVE_INFINITY;
-                    action = new Action(actionType);
-                    continue;
-                }
-                // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType);
-                // calculate the expected value of the action, A1
-                action = new Action(actionType);
-                expectedValue = computeActionValue(state, action);
-
-            } else if (actionType == ActionType.CHANGE_CAR) {
-                // calculate the expected value of the action, A2
-                // with different car types
-                for (String carType : problemSpec.getCarOrder()) {
-                    // skip the current car type
-                    if (carType.equals(state.getCarType())) {
-                        continue;
-                    }
-                    // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", carType: " + carType);
-                    action = new Action(actionType, carType);
-                    expectedValue = computeActionValue(state, action);
-                    // choose the action with the maximum expected value
-                    if (expectedValue > maxValue) {
-                        maxValue = expectedValue;
-                        bestAction = action;
-                    }
-                }
+        int best = -1;
+        boolean evaluated = false;
+        int pruned = 0;
+        for (int k = 0; k < entry.order.length; k++) {
+            int i = entry.order[k];
+            int code = entry.actions[i];
+            if (code != catalog.getMoveCode() && entry.rewards[i]
+                    + problemSpec.getDiscount(catalog.getDuration(code)) * stayValue < maxValue) {
+                entry.q[i] = Double.NaN;
+                pruned++;
+                continue;
+            }
+            if (entry.successors[i] == null) {
+                initSuccessors(state, entry, i);
+            }
+            // only actions not evaluated yet or with a changed successor are evaluated again
+            if (Double.isNaN(entry.q[i]) || entry.isStale(i)) {
+                entry.q[i] = backup(entry, i);
+                evaluated = true;
+            }
+            // choose the action with the maximum value, the first one on ties
+            if (entry.q[i] > maxValue || (entry.q[i] == maxValue && i < best)) {
+                maxValue = entry.q[i];
+                best = i;
+            }
+        }
+        if (!evaluated) {
+            metrics.recordGreedyCacheHit();
+        }
+        metrics.recordActionsPruned(pruned);
+        entry.best = best;
+        entry.computedAt = table.getClock();
+        return best < 0 ? -1 : entry.actions[best];
+    }
 
-            } else if (actionType == ActionType.CHANGE_DRIVER) {
-                // calculate the expected value of the action, A3
-                // with different drivers
-                for (String driver : problemSpec.getDriverOrder()) {
-                    // skip the current driver
-                    if (driver.equals(state.getDriver())) {
-                        continue;
-                    }
-                    // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", driver: " + driver);
-                    action = new Action(actionType, driver);
-                    expectedValue = computeActionValue(state, action);
-                    // choose the action with the maximum expected value
-                    if (expectedValue > maxValue) {
-                        maxValue = expectedValue;
-                        bestAction = action;
-                    }
-                }
+    // list the actions of a state with their rewards, MOVE first and then by decreasing reward
+    private void initActions(State state, QTable.Entry entry) {
+        // MOVE only with enough fuel to move
+        int n = catalog.getActions(state, simulator.isValidFuelToMove(state), actionCodes);
+        entry.actions = Arrays.copyOf(actionCodes, n);
+        entry.rewards = new double[n];
+        entry.successors = new QTable.Entry[n][];
+        entry.weights = new double[n][];
+        entry.q = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            entry.rewards[i] = simulator.getReward(state, entry.actions[i]);
+            entry.q[i] = Double.NaN;
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> {
+            boolean moveX = entry.actions[x] == catalog.getMoveCode();
+            boolean moveY = entry.actions[y] == catalog.getMoveCode();
+            if (moveX != moveY) {
+                return moveX ? -1 : 1;
+            }
+            return Double.compare(entry.rewards[y], entry.rewards[x]);
+        });
+        entry.order = new int[n];
+        for (int k = 0; k < n; k++) {
+            entry.order[k] = order[k];
+        }
+    }
 
-            } else if (actionType == ActionType.CHANGE_TIRES) {
-                // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", tire: " + problemSpec.getTireOrder());
-                // calculate the expected value of the action, A4
-                // with different tire models
-                for (Tire tire : problemSpec.getTireOrder()) {
-                    // skip the current tire model
-                    if (tire.equals(state.getTireModel())) {
-                        continue;
-                    }
-                    // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", tire: " + tire);
-                    action = new Action(actionType, tire);
-                    expectedValue = computeActionValue(state, action);
-                    // choose the action with the maximum expected value
-                    if (expectedValue > maxValue) {
-                        maxValue = expectedValue;
-                        bestAction = action;
-                    }
-                }
-            } else if (actionType == ActionType.ADD_FUEL) {
-                // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType);
-                // calculate the expected value of the action, A5
-                // with different fuel amounts which not exceed the maximum fuel, , 10, 20, 30, 40, 50
-                int currentFuel = state.getFuel();
-                int addFuel = 10;
-                while (currentFuel + addFuel <= ProblemSpec.FUEL_MAX) {
-                    // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", addFuel: " + addFuel);
-                    action = new Action(actionType, addFuel);
-                    expectedValue = computeActionValue(state, action);
-                    // choose the action with the maximum expected value
-                    if (expectedValue > maxValue) {
-                        maxValue = expectedValue;
-                        bestAction = action;
-                    }
-                    addFuel += 10;
-                }
+    // find the successors of the i-th action of a state, weighted by probability and the
+    // discount of the steps they take
+    private void initSuccessors(State state, QTable.Entry entry, int i) {
+        List<Transition> transitions = simulator.getTransitions(state, entry.actions[i]);
+        entry.successors[i] = new QTable.Entry[transitions.size()];
+        entry.weights[i] = new double[transitions.size()];
+        for (int j = 0; j < transitions.size(); j++) {
+            Transition t = transitions.get(j);
+            entry.successors[i][j] = entryOf(t.getNextState());
+            entry.weights[i][j] = t.getProbability() * problemSpec.getDiscount(t.getDuration());
+        }
+    }
 
-            } else if (actionType == ActionType.CHANGE_PRESSURE) {
-                // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType);
-                // calculate the expected value of the action, A6
-                // with different tire pressures
-                for (TirePressure tirePressure : TirePressure.values()) {
-                    // skip the current tire pressure
-                    if (tirePressure.equals(state.getTirePressure())) {
-                        continue;
-                    }
-                    // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", tirePressure: " + tirePressure);
-                    action = new Action(actionType, tirePressure);
-                    expectedValue = computeActionValue(state, action);
-                    // choose the action with the maximum expected value
-                    if (expectedValue > maxValue) {
-                        maxValue = expectedValue;
-                        bestAction = action;
-                    }
-                }
-            } else if (actionType == ActionType.CHANGE_CAR_AND_DRIVER) {
-                // System.out.println("RTDPSolver---getGreedyAction: fqq performA7: CHANGE_CAR_AND_DRIVER,  todo");
-                // calculate the expected value of the action, A7
-                // with different car types and drivers
-                for (String carType : problemSpec.getCarOrder()) {
-                    for (String driver : problemSpec.getDriverOrder()) {
-                        // skip the current car type and driver
-                        if (carType.equals(state.getCarType()) && driver.equals(state.getDriver())) {
-                            continue;
-                        }
-                        // System.out.println("RTDPSolver---getGreedyAction: fqq actionType: " + actionType + ", carType: " + carType + ", driver: " + driver);
-                        action = new Action(actionType, carType, driver);
-                        expectedValue = computeActionValue(state, action);
-                        // choose the action with the maximum expected value
-                        if (expectedValue > maxValue) {
-                            maxValue = expectedValue;
-                            bestAction = action;
+    // Q(s, a) = R(s, a) + ∑ P(s'|s,a) * γ^d(s,a,s') * V(s') of the i-th action of an entry
+    private double backup(QTable.Entry entry, int i) {
+        metrics.recordQEvaluation(catalog.getType(entry.actions[i]));
+        double futureValue = 0.0;
+        QTable.Entry[] successors = entry.successors[i];
+        double[] weights = entry.weights[i];
+        for (int j = 0; j < successors.length; j++) {
+            futureValue += weights[j] * successors[j].value;
+        }
+        return entry.rewards[i] + futureValue;
+    }
+
+    /**
+     * Get the entry of a state in the value table, adding it with the
+     * heuristic value if the state has none. All goal states share one entry
+     * with the goal value.
+     * @param state the state
+     * @return the entry
+     */
+    private QTable.Entry entryOf(State state) {
+        if (simulator.isGoalState(state)) {
+            return goal;
+        }
+        long key = stateIndex.keyOf(state);
+        QTable.Entry entry = table.get(key);
+        if (entry == null) {
+            entry = table.add(key, state.getPos(), heuristicValue(state));
+        }
+        return entry;
+    }
+
+    // the value of a state before its first backup, the estimated reward of moving on from it
+    private double heuristicValue(State state) {
+        return simulator.getFutureValue(state, MOVE);
+    }
+
+    // the largest heuristic value of any state at a position. The heuristic depends on the
+    // terrain, car, driver, tires and pressure but not on the fuel, so it is computed once per
+    // terrain over all of them
+    private double heuristicBound(int pos) {
+        int terrain = problemSpec.getTerrainIndexOfCell(pos);
+        if (Double.isNaN(heuristicBounds[terrain])) {
+            double bound = Double.NEGATIVE_INFINITY;
+            for (String car : problemSpec.getCarOrder()) {
+                for (String driver : problemSpec.getDriverOrder()) {
+                    for (Tire tire : problemSpec.getTireOrder()) {
+                        for (TirePressure pressure : TirePressure.values()) {
+                            State state = new State(pos, false, false, car, ProblemSpec.FUEL_MAX,
+                                    pressure, driver, tire);
+                            bound = Math.max(bound, heuristicValue(state));
                         }
                     }
                 }
-            } else if (actionType == ActionType.CHANGE_TIRE_FUEL_PRESSURE) {
-                // System.out.println("RTDPSolver---getGreedyAction: fqq performA8: CHANGE_CAR_AND_DRIVER,  todo");
             }
-            
-            // choose the action with the maximum expected value
-            if (expectedValue > maxValue) {
-                maxValue = expectedValue;
-                bestAction = action;
+            heuristicBounds[terrain] = bound;
+        }
+        return heuristicBounds[terrain];
+    }
+
+    /**
+     * Compute the value of performing an action in a state,
+     * Q(s, a) = R(s, a) + ∑ P(s'|s,a) * γ^d(s,a,s') * V(s'),
+     * where d(s,a,s') is the number of steps the outcome takes, V(s') the
+     * current value of s', its heuristic value if it has none, and
+     * GOAL_VALUE for goal states
+     * @param currentState the state
+     * @param action the action
+     * @return the action value
+     */
+    public double computeActionValue(State currentState, Action action) {
+        metrics.recordQEvaluation(action.getActionType());
+        // get the reward of the current state and action, R(s, a)
+        double reward = simulator.getReward(currentState, action);
+        // get the future value, ∑ P(s'|s,a) * γ^d * V(s')
+        double futureValue = 0.0;
+        for (Transition t : simulator.getTransitions(currentState, action)) {
+            State nextState = t.getNextState();
+            double value;
+            if (simulator.isGoalState(nextState)) {
+                value = GOAL_VALUE;
+            } else {
+                QTable.Entry entry = table.get(stateIndex.keyOf(nextState));
+                value = entry != null ? entry.value : heuristicValue(nextState);
+            }
+            futureValue += t.getProbability() * problemSpec.getDiscount(t.getDuration()) * value;
+        }
+        return reward + futureValue;  // Q(s, a) = R(s, a) + ∑ P(s'|s,a) * γ^d * V(s')
+    }
+
+    // update the value of the current state using Bellman equation
+    private void updateValue(State currentState, int action) {
+        QTable.Entry entry = entryOf(currentState);
+        // the Q-value is cached if the action came from getGreedyAction
+        double value = entry.best >= 0 && entry.actions[entry.best] == action
+                ? entry.q[entry.best] : computeActionValue(currentState, catalog.getAction(action));
+        double oldValue = entry.value;
+        if (!entry.backedUp) {
+            metrics.recordStateDiscovered();
+        }
+        table.setValue(entry, value);
+        metrics.recordBackup();
+
+        // residual of the backup
+        double residual = Math.abs(value - oldValue);
+        if (!Double.isNaN(residual)) {
+            trialMaxResidual = Math.max(trialMaxResidual, residual);
+            trialResidualSum += residual;
+        }
+        trialBackups++;
+
+        // keep the states whose values still change in the frontier
+        if (frontierFraction > 0) {
+            long key = stateIndex.keyOf(currentState);
+            if (residual >= epsilon && !Double.isInfinite(value)) {
+                frontier.offer(key, currentState, residual);
+            } else {
+                frontier.remove(key);
             }
         }
-        // System.out.println("RTDPSolver---getGreedyAction: greedy action: " + bestAction.getActionType());
+    }
 
-        return bestAction;  // return the action with the maximum expected value
+    // reset the convergence statistics of a trial
+    private void startTrial() {
+        trials++;
+        trialMaxResidual = 0;
+        trialResidualSum = 0;
+        trialBackups = 0;
     }
 
-    private double computeActionValue(State currentState, Action action) {
-        // System.out.println("================= compute action value ==================");
-        // System.out.println("RTDPSolver---computeActionValue: current state: " + currentState.toString());
-        // System.out.println("RTDPSolver---computeActionValue: current action: " + action.getText());
-        // get the reward of the current state and action, R(s, a)
-        double reward = simulator.getReward(currentState, action);  
-        // System.out.println("RTDPSolver---computeActionValue: reward: " + reward);
-    
-        // copy the simulator and future value
-        // System.out.println("RTDPSolver---computeActionValue: copy simulator and future value");
-        Simulator simulatedSimulator = simulator.copySimulator();
-        // perform the action in the simulator and get the next state
-        State nextState = simulatedSimulator.step(action);
-        if (simulatedSimulator.isGoalState(nextState) ){
-            // System.out.println("===================================");
-            return 100;// if the next state is the goal state, return 100
+    // hand the convergence statistics of a trial to the sink
+    private void endTrial(long steps) {
+        if (convergenceSink == null) {
+            return;
         }
-        // if the next state is null, return negative infinity
-        if (nextState == null) {
-            // System.out.println("===================================");
-            return Double.NEGATIVE_INFINITY;
+        convergenceSink.accept(new ConvergenceRecord(trials, System.nanoTime() - startNanos,
+                steps, trialBackups, trialMaxResidual,
+                trialBackups == 0 ? 0 : trialResidualSum / trialBackups,
+                entryOf(initialState).value, solvedStates.size()));
+    }
+
+    /**
+     * Get the greedy policy of the solver. The policy is not thread-safe,
+     * compile it with CompiledPolicy.compile before sharing it between threads.
+     * @return the greedy policy
+     */
+    @Override
+    public Policy getPolicy() {
+        return this::getGreedyAction;
+    }
+
+    /**
+     * Get the number of Bellman backups performed so far
+     * @return number of backups
+     */
+    public long getBackups() {
+        return metrics.getBackups();
+    }
+
+    /**
+     * Send a convergence record to the given sink after every trial. The sink
+     * is called on the solver thread and must not block, e.g. a
+     * ConvergenceCsvSink.
+     * @param convergenceSink the sink, null to stop sending records
+     */
+    @Override
+    public void setConvergenceSink(Consumer<ConvergenceRecord> convergenceSink) {
+        this.convergenceSink = convergenceSink;
+    }
+
+    /**
+     * Get the metrics of the solver, take a snapshot of them at any time
+     * @return the metrics
+     */
+    @Override
+    public SolverMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record the work of the solver in the given metrics, e.g. to aggregate
+     * the work of several solvers
+     * @param metrics the metrics
+     */
+    public void setMetrics(SolverMetrics metrics) {
+        this.metrics.removeValueTable(tableSize);
+        this.metrics = metrics;
+        metrics.addValueTable(tableSize);
+    }
+
+    /**
+     * Key the value table by another state index, e.g. an AbstractStateIndex
+     * with fuel buckets. States with the same key share a value. The value
+     * table and solved states are cleared.
+     * @param stateIndex the state index
+     */
+    public void setStateIndex(StateIndex stateIndex) {
+        this.stateIndex = stateIndex;
+        this.initialKey = stateIndex.keyOf(initialState);
+        table.clear();
+        solvedStates.clear();
+        frontier.clear();
+    }
+
+    /**
+     * Set the time plan may spend on planning trials
+     * @param millis the planning time in milliseconds, 0 for no limit
+     */
+    @Override
+    public void setTimeBudget(long millis) {
+        this.timeBudgetMillis = Math.max(0, millis);
+    }
+
+    /**
+     * Set the number of planning trials plan runs at most
+     * @param maxTrials the number of trials, 0 for no limit
+     */
+    @Override
+    public void setMaxTrials(long maxTrials) {
+        this.maxTrials = Math.max(0, maxTrials);
+    }
+
+    /**
+     * Start a fraction of the planning trials from the frontier, the states
+     * whose last backups had the largest residuals, instead of the initial
+     * state. The trials are spread evenly, e.g. every other trial for 0.5.
+     * Trials start from the initial state while the frontier is empty.
+     * @param frontierFraction the fraction in [0, 1], 0 to always start from the initial state
+     */
+    public void setFrontierFraction(double frontierFraction) {
+        if (!(frontierFraction >= 0 && frontierFraction <= 1)) {
+            throw new IllegalArgumentException("Frontier fraction must be in [0, 1]: " + frontierFraction);
         }
-        // System.out.println("RTDPSolver---computeActionValue: simulator after step: " + nextState.toString());
-        // print simulator after step
-        // System.out.println("RTDPSolver---computeActionValue: simulator after step: " + simulatedSimulator.getCurrentState().toString());
-        // get the future value of the next state, ∑ P(s'|s,a) * V(s')
-        double futureValue = simulatedSimulator.getFutureValue(nextState, action);  
-        // System.out.println("RTDPSolver---computeActionValue: futureValue: " + futureValue);
+        this.frontierFraction = frontierFraction;
+    }
 
-        // System.out.println("RTDPSolver---computeActionValue: action value: " + (reward + discountFactor * futureValue) + ", current action: " + action.getText());
-        // System.out.println("===================================");
-        return reward + discountFactor * futureValue;  // Q(s, a) = R(s, a) + γ ∑ P(s'|s,a) * V(s')
+    /**
+     * Set the number of states the frontier holds. The frontier is cleared.
+     * @param capacity the number of states, the default is DEFAULT_FRONTIER_CAPACITY
+     */
+    public void setFrontierCapacity(int capacity) {
+        this.frontier = new TrialFrontier(capacity);
     }
 
-    // update the value of the current state using Bellman equation
-    private void updateValue(State currentState, Action action) {
-        // System.out.println("RTDPSolver---updateValue: update value: " + currentState.toString());
-        double value = computeActionValue(currentState, action);
-        stateValues.put(currentState, value);
+    /**
+     * Set the convergence threshold of labeled RTDP
+     * @param epsilon the residual below which a state is labeled solved
+     */
+    @Override
+    public void setEpsilon(double epsilon) {
+        if (!(epsilon > 0)) {
+            throw new IllegalArgumentException("Epsilon must be positive: " + epsilon);
+        }
+        this.epsilon = epsilon;
     }
 
 }
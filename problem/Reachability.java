@@ -0,0 +1,211 @@
+package problem;
+
+import simulator.Simulator;
+import simulator.State;
+import simulator.Transition;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The states that can be reached from the start state under any sequence of
+ * actions, found by a breadth-first search over the model. Most of the
+ * N x CT x DT x 4 x 51 x 3 keys of a StateIndex can never occur, e.g. fuel
+ * levels other than the sums of fuel usages and refuels, so the reachable
+ * states are numbered 0..size()-1 in key order, and a solver can size its
+ * tables by size() instead of StateIndex.size(), as ReachableValueIteration
+ * does.
+ *
+ * Goal states are terminal and not numbered.
+ */
+public class Reachability {
+
+    /** Bits per page of the visited set, 512 KB pages **/
+    private static final int PAGE_BITS = 22;
+
+    /** The state index the keys belong to **/
+    private StateIndex index;
+    /** Sorted keys of the reachable non-goal states, the position is the ordinal **/
+    private long[] keys;
+    /** Whether a goal state can be reached **/
+    private boolean goalReachable;
+    /** Number of transitions followed by the search **/
+    private long transitions;
+
+    private Reachability(StateIndex index, long[] keys, boolean goalReachable, long transitions) {
+        this.index = index;
+        this.keys = keys;
+        this.goalReachable = goalReachable;
+        this.transitions = transitions;
+    }
+
+    /**
+     * Find the reachable states of a problem
+     *
+     * @param ps the problem spec
+     * @return the reachable states
+     */
+    public static Reachability explore(ProblemSpec ps) {
+        StateIndex index = new StateIndex(ps);
+        Simulator model = new Simulator(ps);
+        VisitedSet visited = new VisitedSet();
+        boolean goalReachable = false;
+        long transitions = 0;
+
+        // the keys in the order they are found double as the BFS queue
+        long[] found = new long[1024];
+        int count = 0;
+        long startKey = index.keyOf(model.getCurrentState());
+        visited.add(startKey);
+        found[count++] = startKey;
+
+        ActionCatalog catalog = ps.getActionCatalog();
+        int[] codes = new int[catalog.size()];
+        for (int head = 0; head < count; head++) {
+            State state = index.stateOf(found[head]);
+            // MOVE without enough fuel is a transition back to the state
+            int actions = catalog.getActions(state, true, codes);
+            for (int a = 0; a < actions; a++) {
+                for (Transition t : model.getTransitions(state, codes[a])) {
+                    transitions++;
+                    State next = t.getNextState();
+                    if (model.isGoalState(next)) {
+                        goalReachable = true;
+                        continue;
+                    }
+                    long key = index.keyOf(next);
+                    if (visited.add(key)) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = key;
+                    }
+                }
+            }
+        }
+
+        long[] keys = Arrays.copyOf(found, count);
+        Arrays.sort(keys);
+        return new Reachability(index, keys, goalReachable, transitions);
+    }
+
+    /**
+     * Get the number of reachable non-goal states
+     *
+     * @return number of states
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Get the ordinal of a state
+     *
+     * @param state the state
+     * @return the ordinal in [0, size()), or a negative number if the state
+     *      can't be reached
+     */
+    public int ordinalOf(State state) {
+        return ordinalOf(index.keyOf(state));
+    }
+
+    /**
+     * Get the ordinal of a state key
+     *
+     * @param key the key of the state
+     * @return the ordinal in [0, size()), or a negative number if the state
+     *      can't be reached
+     */
+    public int ordinalOf(long key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    /**
+     * Get the key of the state with an ordinal
+     *
+     * @param ordinal the ordinal, in [0, size())
+     * @return the key of the state
+     */
+    public long getKey(int ordinal) {
+        return keys[ordinal];
+    }
+
+    /**
+     * Get the state with an ordinal
+     *
+     * @param ordinal the ordinal, in [0, size())
+     * @return the state
+     */
+    public State getState(int ordinal) {
+        return index.stateOf(keys[ordinal]);
+    }
+
+    public StateIndex getStateIndex() {
+        return index;
+    }
+
+    public boolean isGoalReachable() {
+        return goalReachable;
+    }
+
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * A set of keys as a bitset over [0, StateIndex.size()). Pages are
+     * allocated when first written to, so only the regions of the key space
+     * the search touches take memory.
+     */
+    private static class VisitedSet {
+        private long[][] pages = new long[16][];
+
+        /**
+         * Add a key
+         *
+         * @return true if the key was not in the set yet
+         */
+        boolean add(long key) {
+            int page = (int) (key >>> PAGE_BITS);
+            if (page >= pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            }
+            if (pages[page] == null) {
+                pages[page] = new long[1 << (PAGE_BITS - 6)];
+            }
+            int bit = (int) (key & ((1 << PAGE_BITS) - 1));
+            long mask = 1L << bit;
+            long word = pages[page][bit >>> 6];
+            if ((word & mask) != 0) {
+                return false;
+            }
+            pages[page][bit >>> 6] = word | mask;
+            return true;
+        }
+    }
+
+    /**
+     * Usage: Reachability inputFile
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: Reachability inputFile");
+            System.exit(1);
+        }
+        try {
+            ProblemSpec ps = new ProblemSpec(args[0]);
+            long start = System.nanoTime();
+            Reachability reachability = explore(ps);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            long total = reachability.getStateIndex().size();
+            System.out.println("Reachability: " + reachability.size() + " of " + total
+                    + " states reachable (" + String.format("%.4f%%", 100.0 * reachability.size() / total)
+                    + "), " + reachability.getTransitions() + " transitions, goal "
+                    + (reachability.isGoalReachable() ? "reachable" : "unreachable")
+                    + ", " + millis + " ms");
+        } catch (IOException e) {
+            System.out.println("IO Exception occurred: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package problem;
+
+import simulator.Simulator;
+import simulator.State;
+import simulator.Transition;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Value iteration over the reachable states of a problem, for the optimal
+ * values the solvers are measured against. The values are a dense array
+ * indexed by the ordinals of a Reachability, so only the states that can
+ * actually occur are allocated and swept, rather than the whole key space of
+ * a StateIndex.
+ *
+ * The model is built once in compressed sparse row form: the actions of
+ * state s are actionStart[s] to actionStart[s + 1] - 1, the transitions of
+ * action a are transitionStart[a] to transitionStart[a + 1] - 1, each with
+ * the ordinal of its successor and the weight P(s'|s,a) * γ^d(s,a,s'). The
+ * actions of a state are those a solver considers, MOVE only with enough
+ * fuel to move, and the values solve
+ *
+ *          V(s) = max_a R(s, a) + sum_s' P(s'|s,a) * γ^d(s,a,s') * V(s')
+ *
+ * where V of the goal is RTDPSolver.GOAL_VALUE. The model holds every
+ * transition of every reachable state, which fits in memory for the lower
+ * levels; higher levels may need a larger heap.
+ */
+public class ReachableValueIteration {
+
+    /** Default convergence threshold of solve **/
+    public static final double TOLERANCE = 1e-6;
+    /** Default upper bound on the number of sweeps of solve **/
+    public static final int MAX_SWEEPS = 10000;
+    /** Successor ordinal of the goal **/
+    private static final int GOAL = -1;
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** The reachable states, the value of ordinal s is values[s] **/
+    private Reachability reachability;
+    /** The model in compressed sparse row form **/
+    private int[] actionStart;
+    private int[] actionCodes;
+    private double[] rewards;
+    private int[] transitionStart;
+    private int[] successors;
+    private double[] weights;
+    /** V(s) of each ordinal **/
+    private double[] values;
+    /** Code of the greedy action of each ordinal, -1 if it has no action **/
+    private int[] bestActions;
+
+    /**
+     * Build the model of the reachable states
+     *
+     * @param ps the problem spec
+     * @param reachability the reachable states of the problem
+     */
+    public ReachableValueIteration(ProblemSpec ps, Reachability reachability) {
+        this.ps = ps;
+        this.reachability = reachability;
+        buildModel();
+        values = new double[reachability.size()];
+        bestActions = new int[reachability.size()];
+        Arrays.fill(bestActions, -1);
+    }
+
+    private void buildModel() {
+        Simulator model = new Simulator(ps);
+        ActionCatalog catalog = ps.getActionCatalog();
+        int[] codes = new int[catalog.size()];
+        int n = reachability.size();
+        actionStart = new int[n + 1];
+        actionCodes = new int[n];
+        rewards = new double[n];
+        transitionStart = new int[n + 1];
+        successors = new int[n];
+        weights = new double[n];
+
+        int actionCount = 0;
+        int transitionCount = 0;
+        for (int s = 0; s < n; s++) {
+            actionStart[s] = actionCount;
+            State state = reachability.getState(s);
+            int actions = catalog.getActions(state, model.isValidFuelToMove(state), codes);
+            for (int i = 0; i < actions; i++) {
+                if (actionCount + 1 >= transitionStart.length) {
+                    int capacity = transitionStart.length * 2;
+                    actionCodes = Arrays.copyOf(actionCodes, capacity);
+                    rewards = Arrays.copyOf(rewards, capacity);
+                    transitionStart = Arrays.copyOf(transitionStart, capacity + 1);
+                }
+                actionCodes[actionCount] = codes[i];
+                rewards[actionCount] = model.getReward(state, codes[i]);
+                transitionStart[actionCount] = transitionCount;
+                List<Transition> transitions = model.getTransitions(state, codes[i]);
+                if (transitionCount + transitions.size() > successors.length) {
+                    int capacity = Math.max(successors.length * 2, transitionCount + transitions.size());
+                    successors = Arrays.copyOf(successors, capacity);
+                    weights = Arrays.copyOf(weights, capacity);
+                }
+                for (Transition t : transitions) {
+                    State next = t.getNextState();
+                    successors[transitionCount] = model.isGoalState(next)
+                            ? GOAL : reachability.ordinalOf(next);
+                    weights[transitionCount] = t.getProbability() * ps.getDiscount(t.getDuration());
+                    transitionCount++;
+                }
+                actionCount++;
+            }
+        }
+        actionStart[n] = actionCount;
+        transitionStart[actionCount] = transitionCount;
+    }
+
+    /**
+     * Sweep the states until the largest change of a value is below the
+     * tolerance. The states are swept furthest along the track first, and
+     * each sweep uses the values already updated in it.
+     *
+     * @param tolerance the convergence threshold
+     * @param maxSweeps the number of sweeps at most
+     * @return the number of sweeps run
+     */
+    public int solve(double tolerance, int maxSweeps) {
+        // ordinals are in key order, which is by position first
+        for (int sweep = 1; sweep <= maxSweeps; sweep++) {
+            double maxChange = 0;
+            for (int s = values.length - 1; s >= 0; s--) {
+                double value = Double.NEGATIVE_INFINITY;
+                int best = -1;
+                for (int a = actionStart[s]; a < actionStart[s + 1]; a++) {
+                    double q = rewards[a];
+                    for (int t = transitionStart[a]; t < transitionStart[a + 1]; t++) {
+                        q += weights[t] * (successors[t] == GOAL
+                                ? RTDPSolver.GOAL_VALUE : values[successors[t]]);
+                    }
+                    if (q > value) {
+                        value = q;
+                        best = actionCodes[a];
+                    }
+                }
+                if (best >= 0) {
+                    maxChange = Math.max(maxChange, Math.abs(value - values[s]));
+                    values[s] = value;
+                }
+                bestActions[s] = best;
+            }
+            if (maxChange < tolerance) {
+                return sweep;
+            }
+        }
+        return maxSweeps;
+    }
+
+    /**
+     * Get the value of a state
+     *
+     * @param state the state
+     * @return V(s), the goal value for goal states, NaN for states that
+     *      can't be reached
+     */
+    public double getValue(State state) {
+        if (state.getPos() >= ps.getN()) {
+            return RTDPSolver.GOAL_VALUE;
+        }
+        int s = reachability.ordinalOf(state);
+        return s < 0 ? Double.NaN : values[s];
+    }
+
+    /**
+     * Get the greedy policy of the values. The policy only reads arrays, so
+     * it is safe to share between threads once solve has returned.
+     *
+     * @return the policy, null actions for states without an action
+     */
+    public Policy getPolicy() {
+        ActionCatalog catalog = ps.getActionCatalog();
+        return state -> {
+            int s = reachability.ordinalOf(state);
+            if (s < 0) {
+                throw new IllegalArgumentException("State can't be reached: " + state);
+            }
+            return bestActions[s] < 0 ? null : catalog.getAction(bestActions[s]);
+        };
+    }
+
+    /**
+     * Get the number of transitions in the model
+     *
+     * @return number of transitions
+     */
+    public int getTransitionCount() {
+        return transitionStart[actionStart[values.length]];
+    }
+
+    /**
+     * Usage: ReachableValueIteration inputFile
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Usage: ReachableValueIteration inputFile");
+            System.exit(1);
+        }
+        try {
+            ProblemSpec ps = new ProblemSpec(args[0]);
+            long start = System.nanoTime();
+            Reachability reachability = Reachability.explore(ps);
+            ReachableValueIteration vi = new ReachableValueIteration(ps, reachability);
+            int sweeps = vi.solve(TOLERANCE, MAX_SWEEPS);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            State initialState = new Simulator(ps).getCurrentState();
+            System.out.println("Value iteration: " + reachability.size() + " states, "
+                    + vi.getTransitionCount() + " transitions, " + sweeps + " sweeps, "
+                    + millis + " ms, V(start) = " + vi.getValue(initialState));
+
+            // the optimal policy evaluated exactly, for comparison with the solvers
+            CompiledPolicy policy = CompiledPolicy.compile(ps, vi.getPolicy());
+            ExactPolicyEvaluator exact = new ExactPolicyEvaluator(ps, policy);
+            int i = policy.indexOf(initialState);
+            System.out.println("The exact expected steps of the greedy policy is: "
+                    + exact.computeExpectedSteps()[i] + ", success probability within maxT: "
+                    + exact.computeSuccessProbability()[i]);
+        } catch (IOException e) {
+            System.out.println("IO Exception occurred: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
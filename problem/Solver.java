@@ -0,0 +1,75 @@
+package problem;
+
+import java.util.function.Consumer;
+
+/**
+ * A solver for a problem. It plans on a model of the problem, then acts on
+ * the simulator it was given, e.g. RTDP and labeled RTDP (RTDPSolver).
+ */
+public interface Solver {
+
+    /**
+     * Get the name of the algorithm, e.g. "rtdp"
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Run planning trials from the start state without touching the
+     * simulator, until the solver has converged or the planning budget runs
+     * out. Does nothing if there is no budget.
+     */
+    void plan();
+
+    /**
+     * Plan, then act on the simulator from the start state until the goal is
+     * reached or the max time steps are exceeded
+     *
+     * @return the number of steps to reach the goal, -1 if not reached
+     */
+    int solve();
+
+    /**
+     * Get the greedy policy of the solver
+     *
+     * @return the policy, not thread-safe
+     */
+    Policy getPolicy();
+
+    /**
+     * Get the counters of the work done by the solver
+     *
+     * @return the metrics
+     */
+    SolverMetrics getMetrics();
+
+    /**
+     * Set the time the solver may spend planning
+     *
+     * @param millis the planning time in milliseconds, 0 for no limit
+     */
+    void setTimeBudget(long millis);
+
+    /**
+     * Set the number of planning trials the solver may run
+     *
+     * @param maxTrials the number of trials, 0 for no limit
+     */
+    void setMaxTrials(long maxTrials);
+
+    /**
+     * Set the convergence threshold
+     *
+     * @param epsilon the Bellman residual below which a state is converged
+     */
+    void setEpsilon(double epsilon);
+
+    /**
+     * Send a convergence record to the given sink after every trial
+     *
+     * @param convergenceSink the sink, called on the solver thread, null to
+     *                        stop sending records
+     */
+    void setConvergenceSink(Consumer<ConvergenceRecord> convergenceSink);
+}
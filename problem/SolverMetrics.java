@@ -0,0 +1,254 @@
+package problem;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters of the work done by a solver. All counters are LongAdders and the
+ * histograms are lock-free, so recording is cheap enough to leave on, and a
+ * snapshot can be taken from any thread at any time. One instance may be
+ * shared by several solvers to aggregate their work.
+ */
+public class SolverMetrics {
+
+    /** Bellman backups **/
+    private final LongAdder backups = new LongAdder();
+    /** Q(s, a) evaluations, per action type **/
+    private final LongAdder[] qEvaluations = new LongAdder[ActionType.values().length];
+    /** Greedy action queries answered from the Q-value cache **/
+    private final LongAdder greedyCacheHits = new LongAdder();
+    /** Actions skipped by the greedy search because their bound can't beat the best **/
+    private final LongAdder actionsPruned = new LongAdder();
+    /** States added to a value table **/
+    private final LongAdder statesDiscovered = new LongAdder();
+    /** States labeled as solved **/
+    private final LongAdder statesSolved = new LongAdder();
+    /** Steps per trial **/
+    private final Histogram trialLengths = new Histogram();
+    /** Latency of choosing the greedy action, in nanoseconds **/
+    private final Histogram greedyLatency = new Histogram();
+    /** Sizes of the value tables of the solvers recording here **/
+    private final List<IntSupplier> valueTables = new CopyOnWriteArrayList<>();
+
+    public SolverMetrics() {
+        for (int i = 0; i < qEvaluations.length; i++) {
+            qEvaluations[i] = new LongAdder();
+        }
+    }
+
+    void recordBackup() {
+        backups.increment();
+    }
+
+    void recordQEvaluation(ActionType actionType) {
+        qEvaluations[actionType.ordinal()].increment();
+    }
+
+    void recordGreedyCacheHit() {
+        greedyCacheHits.increment();
+    }
+
+    void recordActionsPruned(long actions) {
+        actionsPruned.add(actions);
+    }
+
+    void recordStateDiscovered() {
+        statesDiscovered.increment();
+    }
+
+    void recordStateSolved() {
+        statesSolved.increment();
+    }
+
+    void recordTrial(long steps) {
+        trialLengths.record(steps);
+    }
+
+    void recordGreedyLatency(long nanos) {
+        greedyLatency.record(nanos);
+    }
+
+    /**
+     * Report the size of a value table with these metrics. The size is read
+     * without locking when a snapshot is taken, so it may be slightly stale.
+     *
+     * @param size the number of states in the table
+     */
+    void addValueTable(IntSupplier size) {
+        valueTables.add(size);
+    }
+
+    void removeValueTable(IntSupplier size) {
+        valueTables.remove(size);
+    }
+
+    public long getBackups() {
+        return backups.sum();
+    }
+
+    /**
+     * Clear all counters. Meant for between runs, counts recorded during the
+     * reset may be partly lost.
+     */
+    public void reset() {
+        backups.reset();
+        for (LongAdder adder : qEvaluations) {
+            adder.reset();
+        }
+        greedyCacheHits.reset();
+        actionsPruned.reset();
+        statesDiscovered.reset();
+        statesSolved.reset();
+        trialLengths.reset();
+        greedyLatency.reset();
+    }
+
+    /**
+     * Take a snapshot of all counters
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        long[] q = new long[qEvaluations.length];
+        for (int i = 0; i < q.length; i++) {
+            q[i] = qEvaluations[i].sum();
+        }
+        long valueTableStates = 0;
+        for (IntSupplier size : valueTables) {
+            valueTableStates += size.getAsInt();
+        }
+        return new Snapshot(backups.sum(), q, greedyCacheHits.sum(), actionsPruned.sum(),
+                statesDiscovered.sum(), statesSolved.sum(), valueTableStates,
+                trialLengths.snapshot(), greedyLatency.snapshot());
+    }
+
+    /**
+     * The counters at one point in time
+     */
+    public static class Snapshot {
+        private final long backups;
+        private final long[] qEvaluations;
+        private final long greedyCacheHits;
+        private final long actionsPruned;
+        private final long statesDiscovered;
+        private final long statesSolved;
+        private final long valueTableStates;
+        private final Histogram.Snapshot trialLengths;
+        private final Histogram.Snapshot greedyLatency;
+
+        private Snapshot(long backups, long[] qEvaluations, long greedyCacheHits, long actionsPruned,
+                         long statesDiscovered, long statesSolved, long valueTableStates,
+                         Histogram.Snapshot trialLengths, Histogram.Snapshot greedyLatency) {
+            this.backups = backups;
+            this.qEvaluations = qEvaluations;
+            this.greedyCacheHits = greedyCacheHits;
+            this.actionsPruned = actionsPruned;
+            this.statesDiscovered = statesDiscovered;
+            this.statesSolved = statesSolved;
+            this.valueTableStates = valueTableStates;
+            this.trialLengths = trialLengths;
+            this.greedyLatency = greedyLatency;
+        }
+
+        public long getBackups() {
+            return backups;
+        }
+
+        /**
+         * Get the number of Q(s, a) evaluations of an action type
+         *
+         * @param actionType the action type
+         * @return the number of evaluations
+         */
+        public long getQEvaluations(ActionType actionType) {
+            return qEvaluations[actionType.ordinal()];
+        }
+
+        /**
+         * Get the number of Q(s, a) evaluations of all action types
+         *
+         * @return the number of evaluations
+         */
+        public long getTotalQEvaluations() {
+            long total = 0;
+            for (long q : qEvaluations) {
+                total += q;
+            }
+            return total;
+        }
+
+        /**
+         * Get the number of greedy action queries answered from the Q-value
+         * cache without evaluating any action
+         *
+         * @return number of cache hits
+         */
+        public long getGreedyCacheHits() {
+            return greedyCacheHits;
+        }
+
+        /**
+         * Get the number of actions the greedy search skipped without
+         * evaluating them, because their bound couldn't beat the best action
+         *
+         * @return number of actions pruned
+         */
+        public long getActionsPruned() {
+            return actionsPruned;
+        }
+
+        public long getStatesDiscovered() {
+            return statesDiscovered;
+        }
+
+        public long getStatesSolved() {
+            return statesSolved;
+        }
+
+        /**
+         * Get the number of states in the value tables, including states
+         * that were only looked at and never backed up
+         *
+         * @return number of states
+         */
+        public long getValueTableStates() {
+            return valueTableStates;
+        }
+
+        /**
+         * Get the distribution of steps per trial
+         */
+        public Histogram.Snapshot getTrialLengths() {
+            return trialLengths;
+        }
+
+        /**
+         * Get the distribution of greedy action latencies in nanoseconds
+         */
+        public Histogram.Snapshot getGreedyLatency() {
+            return greedyLatency;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("backups: ").append(backups).append("\n");
+            sb.append("Q evaluations:");
+            for (ActionType actionType : ActionType.values()) {
+                sb.append(" A").append(actionType.getActionNo()).append("=")
+                        .append(qEvaluations[actionType.ordinal()]);
+            }
+            sb.append("\n");
+            sb.append("greedy cache hits: ").append(greedyCacheHits).append("\n");
+            sb.append("actions pruned: ").append(actionsPruned).append("\n");
+            sb.append("states discovered: ").append(statesDiscovered).append("\n");
+            sb.append("states solved: ").append(statesSolved).append("\n");
+            sb.append("value table states: ").append(valueTableStates).append("\n");
+            sb.append("trial lengths: ").append(trialLengths).append("\n");
+            sb.append("greedy action ns: ").append(greedyLatency).append("\n");
+            return sb.toString();
+        }
+    }
+}
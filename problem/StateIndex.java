@@ -0,0 +1,81 @@
+package problem;
+
+import simulator.State;
+
+/**
+ * Dense numbering of the states of a problem. A state is identified by its
+ * position, car, driver, tire model, fuel and tire pressure; slip and
+ * breakdown are transient and resolved by the simulator within a step, so
+ * they are not part of the key.
+ *
+ *      key = (((((pos - 1) * CT + car) * DT + driver) * 4 + tire) * 51 + fuel) * 3 + pressure
+ */
+public class StateIndex {
+
+    /** Number of different fuel levels **/
+    public static final int FUEL_LEVELS = ProblemSpec.FUEL_MAX - ProblemSpec.FUEL_MIN + 1;
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** Number of car types and drivers **/
+    private int CT;
+    private int DT;
+
+    /**
+     * Construct the state index for a problem
+     *
+     * @param ps the problem spec
+     */
+    public StateIndex(ProblemSpec ps) {
+        this.ps = ps;
+        this.CT = ps.getCT();
+        this.DT = ps.getDT();
+    }
+
+    /**
+     * Get the number of keys in the index
+     *
+     * @return number of distinct states
+     */
+    public long size() {
+        return (long) ps.getN() * CT * DT * ProblemSpec.NUM_TYRE_MODELS * FUEL_LEVELS
+                * ProblemSpec.TIRE_PRESSURE_LEVELS;
+    }
+
+    /**
+     * Get the key of a state
+     *
+     * @param state the state
+     * @return the key of the state, in [0, size())
+     */
+    public long keyOf(State state) {
+        long key = state.getPos() - 1;
+        key = key * CT + state.getCarIndex(ps);
+        key = key * DT + state.getDriverIndex(ps);
+        key = key * ProblemSpec.NUM_TYRE_MODELS + state.getTireIndex(ps);
+        key = key * FUEL_LEVELS + (state.getFuel() - ProblemSpec.FUEL_MIN);
+        key = key * ProblemSpec.TIRE_PRESSURE_LEVELS + state.getTirePressure().ordinal();
+        return key;
+    }
+
+    /**
+     * Get the state with a given key
+     *
+     * @param key the key, in [0, size())
+     * @return the state with the key
+     */
+    public State stateOf(long key) {
+        TirePressure pressure = TirePressure.values()[(int) (key % ProblemSpec.TIRE_PRESSURE_LEVELS)];
+        key /= ProblemSpec.TIRE_PRESSURE_LEVELS;
+        int fuel = (int) (key % FUEL_LEVELS) + ProblemSpec.FUEL_MIN;
+        key /= FUEL_LEVELS;
+        Tire tire = ps.getTireOrder().get((int) (key % ProblemSpec.NUM_TYRE_MODELS));
+        key /= ProblemSpec.NUM_TYRE_MODELS;
+        String driver = ps.getDriverOrder().get((int) (key % DT));
+        key /= DT;
+        String car = ps.getCarOrder().get((int) (key % CT));
+        key /= CT;
+        int pos = (int) key + 1;
+        return new State(pos, false, false, car, fuel, pressure, driver, tire);
+    }
+}
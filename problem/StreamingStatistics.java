@@ -0,0 +1,276 @@
+package problem;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Summary statistics of a stream of values in constant memory. The mean and
+ * variance are kept with Welford's method, the quantiles with a KLL sketch:
+ * a stack of compactors where level h holds items standing for 2^h values
+ * each. When the sketch is full, the lowest full level is sorted and every
+ * other item is promoted to the level above, so the sketch keeps
+ * O(k log(n / k)) items and ranks are off by about 1.7 / k of n.
+ *
+ * An instance is not thread-safe. Give each thread its own instance and
+ * merge them afterwards, merging is as cheap as the sketches are small.
+ */
+public class StreamingStatistics {
+
+    /** Default size of the top compactor, rank error around 1% **/
+    public static final int DEFAULT_K = 200;
+    /** Capacity ratio between a compactor and the one above it **/
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+    /** Smallest capacity of a compactor **/
+    private static final int MIN_CAPACITY = 8;
+
+    /** Number, mean and sum of squared deviations of the values (Welford) **/
+    private long count;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /** Size of the top compactor **/
+    private int k;
+    /** levels[h][0..sizes[h]) are the items of weight 2^h **/
+    private double[][] levels;
+    private int[] sizes;
+    /** Number of items over all levels, and how many fit before compacting **/
+    private int items;
+    private int totalCapacity;
+    /** Picks which half of a compacted level is promoted **/
+    private SplittableRandom random = new SplittableRandom(0x5EED);
+
+    public StreamingStatistics() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Construct an empty accumulator
+     *
+     * @param k size of the top compactor, larger is more accurate
+     */
+    public StreamingStatistics(int k) {
+        if (k < MIN_CAPACITY) {
+            throw new IllegalArgumentException("k must be at least " + MIN_CAPACITY + ": " + k);
+        }
+        this.k = k;
+        this.levels = new double[][] {new double[k]};
+        this.sizes = new int[1];
+        this.totalCapacity = capacity(0);
+    }
+
+    /**
+     * Add a value
+     *
+     * @param value the value, NaN is ignored
+     */
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+
+        append(0, value);
+        if (items >= totalCapacity) {
+            compress();
+        }
+    }
+
+    /**
+     * Add all values of another accumulator to this one. The other one is
+     * left unchanged.
+     *
+     * @param other the accumulator to merge
+     */
+    public void merge(StreamingStatistics other) {
+        if (other.count == 0) {
+            return;
+        }
+        // Chan et al.'s pairwise update of the moments
+        long n = count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / n;
+        m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+        count = n;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        while (items >= totalCapacity) {
+            compress();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get the mean of the values
+     *
+     * @return the mean, NaN if there are none
+     */
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Get the population variance of the values
+     *
+     * @return the variance, NaN if there are none
+     */
+    public double getVariance() {
+        return count == 0 ? Double.NaN : m2 / count;
+    }
+
+    /**
+     * Get the population standard deviation of the values
+     *
+     * @return the standard deviation, NaN if there are none
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    /**
+     * Get the smallest value
+     *
+     * @return the smallest value, NaN if there are none
+     */
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    /**
+     * Get the largest value
+     *
+     * @return the largest value, NaN if there are none
+     */
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    public double getMedian() {
+        return getQuantile(0.5);
+    }
+
+    /**
+     * Get an estimate of a quantile of the values. The estimate is a value
+     * that was added, the exact minimum or maximum for q = 0 or q = 1.
+     *
+     * @param q the quantile in [0, 1]
+     * @return the estimate, NaN if there are no values
+     */
+    public double getQuantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (q <= 0) {
+            return min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+        // walk the sorted levels in merged order, adding up the weights
+        double[][] sorted = new double[levels.length][];
+        int[] next = new int[levels.length];
+        long totalWeight = 0;
+        for (int h = 0; h < levels.length; h++) {
+            sorted[h] = Arrays.copyOf(levels[h], sizes[h]);
+            Arrays.sort(sorted[h]);
+            totalWeight += (long) sizes[h] << h;
+        }
+        double rank = q * totalWeight;
+        long seen = 0;
+        while (true) {
+            int lowest = -1;
+            for (int h = 0; h < sorted.length; h++) {
+                if (next[h] < sorted[h].length
+                        && (lowest < 0 || sorted[h][next[h]] < sorted[lowest][next[lowest]])) {
+                    lowest = h;
+                }
+            }
+            if (lowest < 0) {
+                return max;
+            }
+            double value = sorted[lowest][next[lowest]++];
+            seen += 1L << lowest;
+            if (seen >= rank) {
+                return value;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.3f sd=%.3f min=%.3f p50=%.3f p95=%.3f p99=%.3f max=%.3f",
+                count, getMean(), getStandardDeviation(), getMin(), getQuantile(0.5),
+                getQuantile(0.95), getQuantile(0.99), getMax());
+    }
+
+    /** Capacity of level h, the top level has capacity k **/
+    private int capacity(int h) {
+        int depth = levels.length - 1 - h;
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, depth)));
+    }
+
+    private void append(int h, double value) {
+        if (h >= levels.length) {
+            levels = Arrays.copyOf(levels, h + 1);
+            sizes = Arrays.copyOf(sizes, h + 1);
+            for (int i = 0; i < levels.length; i++) {
+                if (levels[i] == null) {
+                    levels[i] = new double[MIN_CAPACITY];
+                }
+            }
+            totalCapacity = 0;
+            for (int i = 0; i < levels.length; i++) {
+                totalCapacity += capacity(i);
+            }
+        }
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], levels[h].length * 2);
+        }
+        levels[h][sizes[h]++] = value;
+        items++;
+    }
+
+    /**
+     * Compact the lowest level that is at capacity: sort it and promote
+     * either the odd or the even items to the level above. With an odd
+     * number of items the largest one stays behind.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] < capacity(h)) {
+                continue;
+            }
+            double[] level = levels[h];
+            int size = sizes[h];
+            Arrays.sort(level, 0, size);
+            int compacted = size & ~1;
+            int offset = random.nextBoolean() ? 1 : 0;
+            sizes[h] = 0;
+            items -= size;
+            for (int i = offset; i < compacted; i += 2) {
+                append(h + 1, level[i]);
+            }
+            if (compacted < size) {
+                levels[h][0] = level[size - 1];
+                sizes[h] = 1;
+                items++;
+            }
+            return;
+        }
+    }
+}
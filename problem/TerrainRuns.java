@@ -0,0 +1,133 @@
+package problem;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The environment map stored as runs of consecutive cells with the same
+ * terrain, so its size depends on the number of runs rather than the number
+ * of cells. Looking up the terrain of a cell is a binary search over the
+ * runs.
+ */
+public class TerrainRuns {
+
+    /** Number of cells in the map **/
+    private final int N;
+    /** runStarts[r] is the first cell (from 1) of run r, in increasing order **/
+    private final int[] runStarts;
+    /** runTerrains[r] is the index of the terrain of run r in terrainOrder **/
+    private final byte[] runTerrains;
+    /** Terrains in the order they appear in input **/
+    private final Terrain[] terrainOrder;
+
+    /**
+     * Construct the map from its runs
+     *
+     * @param N the number of cells
+     * @param runStarts first cell of each run, increasing and starting at 1
+     * @param runTerrains terrain index of each run
+     * @param terrainOrder the terrains in the order they appear in input
+     */
+    public TerrainRuns(int N, int[] runStarts, byte[] runTerrains, List<Terrain> terrainOrder) {
+        if (runStarts.length != runTerrains.length || runStarts.length == 0 || runStarts[0] != 1) {
+            throw new IllegalArgumentException("Runs must cover the map from cell 1");
+        }
+        for (int r = 1; r < runStarts.length; r++) {
+            if (runStarts[r] <= runStarts[r - 1] || runStarts[r] > N) {
+                throw new IllegalArgumentException("Invalid start of run " + r + ": " + runStarts[r]);
+            }
+        }
+        this.N = N;
+        this.runStarts = runStarts;
+        this.runTerrains = runTerrains;
+        this.terrainOrder = terrainOrder.toArray(new Terrain[0]);
+    }
+
+    public int getN() {
+        return N;
+    }
+
+    public int getRunCount() {
+        return runStarts.length;
+    }
+
+    /**
+     * Get the first cell of a run
+     *
+     * @param run the run index
+     * @return the cell, from 1
+     */
+    public int getRunStart(int run) {
+        return runStarts[run];
+    }
+
+    /**
+     * Get the last cell of a run
+     *
+     * @param run the run index
+     * @return the cell, from 1
+     */
+    public int getRunEnd(int run) {
+        return run + 1 < runStarts.length ? runStarts[run + 1] - 1 : N;
+    }
+
+    /**
+     * Get the terrain index of a run
+     *
+     * @param run the run index
+     * @return index of the terrain as it appeared in input
+     */
+    public int getRunTerrainIndex(int run) {
+        return runTerrains[run];
+    }
+
+    /**
+     * Get the run containing a cell
+     *
+     * @param pos the cell, from 1 to N
+     * @return the run index
+     */
+    public int getRun(int pos) {
+        if (pos < 1 || pos > N) {
+            throw new IndexOutOfBoundsException("Invalid cell: " + pos);
+        }
+        int run = Arrays.binarySearch(runStarts, pos);
+        return run >= 0 ? run : -run - 2;
+    }
+
+    /**
+     * Get the terrain index of a cell
+     *
+     * @param pos the cell, from 1 to N
+     * @return index of the terrain as it appeared in input
+     */
+    public int getTerrainIndex(int pos) {
+        return runTerrains[getRun(pos)];
+    }
+
+    /**
+     * Get the terrain of a cell
+     *
+     * @param pos the cell, from 1 to N
+     * @return the terrain
+     */
+    public Terrain getTerrain(int pos) {
+        return terrainOrder[getTerrainIndex(pos)];
+    }
+
+    /**
+     * Get the number of cells with a terrain
+     *
+     * @param terrainIndex index of the terrain as it appeared in input
+     * @return the number of cells
+     */
+    public int countCells(int terrainIndex) {
+        int count = 0;
+        for (int r = 0; r < runStarts.length; r++) {
+            if (runTerrains[r] == terrainIndex) {
+                count += getRunEnd(r) - runStarts[r] + 1;
+            }
+        }
+        return count;
+    }
+}
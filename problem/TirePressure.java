@@ -19,4 +19,21 @@ public enum TirePressure {
     public String asString() {
         return text;
     }
+
+    /**
+     * Get the factor the fuel consumption of a move is multiplied by at this
+     * pressure
+     *
+     * @return 3 at 50%, 2 at 75% and 1 at 100%
+     */
+    public int getFuelMultiplier() {
+        switch (this) {
+            case FIFTY_PERCENT:
+                return 3;
+            case SEVENTY_FIVE_PERCENT:
+                return 2;
+            default:
+                return 1;
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package problem;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one solver trial, from the start state until the goal, a
+ * solved state or max time steps
+ */
+@Name("rtdp.SolverTrial")
+@Label("Solver Trial")
+@Category({"RTDP", "Solver"})
+@Description("One trial of RTDP or labeled RTDP")
+class TrialEvent extends jdk.jfr.Event {
+
+    @Label("Labeled")
+    @Description("Whether the trial was labeled RTDP")
+    boolean labeled;
+
+    @Label("Start Position")
+    int startPosition;
+
+    @Label("End Position")
+    int endPosition;
+
+    @Label("Steps")
+    @Description("Actions taken in the trial")
+    long steps;
+
+    @Label("Backups")
+    @Description("Bellman backups performed in the trial")
+    long backups;
+
+    @Label("Goal Reached")
+    boolean goalReached;
+}
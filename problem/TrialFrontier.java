@@ -0,0 +1,175 @@
+package problem;
+
+import simulator.State;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A bounded set of states to start planning trials from, by priority. The
+ * states are kept in a min-heap on their priority, so when the set is full
+ * a new state replaces the one with the lowest priority, or is dropped if
+ * its own priority is lower. Offering a state that is already in the set
+ * replaces its priority, so the priority of a state is the one it was last
+ * offered with.
+ *
+ * RTDPSolver offers each state it backs up with the Bellman residual of the
+ * backup, so the set holds the states whose values last changed the most.
+ */
+class TrialFrontier {
+
+    /** Keys, states and priorities of the heap, the root at 0 has the lowest priority **/
+    private final long[] keys;
+    private final State[] states;
+    private final double[] priorities;
+    /** Heap position by state key **/
+    private final Map<Long, Integer> positions = new HashMap<>();
+    /** Number of states in the heap **/
+    private int size;
+
+    /**
+     * Construct an empty frontier
+     *
+     * @param capacity the number of states kept at most
+     */
+    TrialFrontier(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        keys = new long[capacity];
+        states = new State[capacity];
+        priorities = new double[capacity];
+    }
+
+    /**
+     * Offer a state to the frontier
+     *
+     * @param key the key of the state
+     * @param state the state
+     * @param priority the priority of the state
+     */
+    void offer(long key, State state, double priority) {
+        Integer i = positions.get(key);
+        if (i != null) {
+            double old = priorities[i];
+            states[i] = state;
+            priorities[i] = priority;
+            if (priority < old) {
+                siftUp(i);
+            } else {
+                siftDown(i);
+            }
+        } else if (size < keys.length) {
+            set(size, key, state, priority);
+            siftUp(size++);
+        } else if (priority > priorities[0]) {
+            positions.remove(keys[0]);
+            set(0, key, state, priority);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Remove a state from the frontier, e.g. when its value converged
+     *
+     * @param key the key of the state
+     */
+    void remove(long key) {
+        Integer i = positions.get(key);
+        if (i != null) {
+            removeAt(i);
+        }
+    }
+
+    /**
+     * Remove the state with the highest priority. The leaves of the heap are
+     * searched for it, which is cheap for the few states a frontier holds.
+     *
+     * @return the state, null if the frontier is empty
+     */
+    State pollMax() {
+        if (size == 0) {
+            return null;
+        }
+        int max = size / 2;
+        for (int i = max + 1; i < size; i++) {
+            if (priorities[i] > priorities[max]) {
+                max = i;
+            }
+        }
+        State state = states[max];
+        removeAt(max);
+        return state;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            states[i] = null;
+        }
+        positions.clear();
+        size = 0;
+    }
+
+    // remove the state at a heap position and restore the heap
+    private void removeAt(int i) {
+        positions.remove(keys[i]);
+        size--;
+        if (i < size) {
+            double old = priorities[i];
+            set(i, keys[size], states[size], priorities[size]);
+            if (priorities[i] < old) {
+                siftUp(i);
+            } else {
+                siftDown(i);
+            }
+        }
+        states[size] = null;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (priorities[parent] <= priorities[i]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && priorities[child + 1] < priorities[child]) {
+                child++;
+            }
+            if (priorities[i] <= priorities[child]) {
+                break;
+            }
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        State state = states[i];
+        double priority = priorities[i];
+        set(i, keys[j], states[j], priorities[j]);
+        set(j, key, state, priority);
+    }
+
+    private void set(int i, long key, State state, double priority) {
+        keys[i] = key;
+        states[i] = state;
+        priorities[i] = priority;
+        positions.put(key, i);
+    }
+}
@@ -0,0 +1,89 @@
+package simulator;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A discrete probability distribution over the indices 0..n-1 with a
+ * Walker/Vose alias table, so an index can be sampled in O(1) with one random
+ * draw and two array loads.
+ */
+public class AliasTable {
+
+    /** The probability of each index **/
+    private double[] probabilities;
+    /** Probability of keeping column i rather than taking its alias **/
+    private double[] keep;
+    /** Alias of each column **/
+    private int[] alias;
+
+    /**
+     * Build the alias table for a distribution (Vose's method)
+     *
+     * @param probabilities the probability of each index, summing to 1
+     */
+    public AliasTable(double[] probabilities) {
+        int n = probabilities.length;
+        this.probabilities = probabilities;
+        this.keep = new double[n];
+        this.alias = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = probabilities[i] * n;
+            if (scaled[i] < 1.0) {
+                small[numSmall++] = i;
+            } else {
+                large[numLarge++] = i;
+            }
+        }
+        while (numSmall > 0 && numLarge > 0) {
+            int l = small[--numSmall];
+            int g = large[--numLarge];
+            keep[l] = scaled[l];
+            alias[l] = g;
+            scaled[g] = (scaled[g] + scaled[l]) - 1.0;
+            if (scaled[g] < 1.0) {
+                small[numSmall++] = g;
+            } else {
+                large[numLarge++] = g;
+            }
+        }
+        // what is left over is 1 up to rounding error
+        while (numLarge > 0) {
+            int g = large[--numLarge];
+            keep[g] = 1.0;
+            alias[g] = g;
+        }
+        while (numSmall > 0) {
+            int l = small[--numSmall];
+            keep[l] = 1.0;
+            alias[l] = l;
+        }
+    }
+
+    /**
+     * Sample an index
+     *
+     * @param random the random number generator
+     * @return an index in [0, n) distributed as the probabilities
+     */
+    public int sample(RandomGenerator random) {
+        double u = random.nextDouble() * keep.length;
+        int i = (int) u;
+        return (u - i) < keep[i] ? i : alias[i];
+    }
+
+    /**
+     * Get the probability of each index. The array is shared and must not be
+     * modified.
+     *
+     * @return the probabilities
+     */
+    public double[] getProbabilities() {
+        return probabilities;
+    }
+}
@@ -0,0 +1,273 @@
+package simulator;
+
+import problem.ProblemSpec;
+import problem.TirePressure;
+
+/**
+ * The move distributions of a problem, one per combination of terrain, car,
+ * driver, tire model and tire pressure:
+ *
+ *          P(K | C, D, Ti, Te, Pressure)
+ *
+ * Every distribution is computed up front and kept as an alias table, along
+ * with the expected reward of moving, which depends on the same combination.
+ * A lookup is an array load with the state's cached indices, so sampling a
+ * move is one random draw and two array loads. The problem spec builds its
+ * move model once, and the model is safe to share between threads.
+ */
+public class MoveModel {
+
+    /** Index of the slip outcome in a move distribution **/
+    private static final int SLIP_INDEX = ProblemSpec.SLIP - ProblemSpec.CAR_MIN_MOVE;
+    /** Index of moving 0 cells in a move distribution **/
+    private static final int STAY_INDEX = -ProblemSpec.CAR_MIN_MOVE;
+    /** Index of the breakdown outcome in a move distribution **/
+    private static final int BREAKDOWN_INDEX = ProblemSpec.BREAKDOWN - ProblemSpec.CAR_MIN_MOVE;
+    /** Reward of each cell moved, and of each step spent recovering from a slip or breakdown **/
+    private static final double REWARD_PER_CELL = 5.0;
+    private static final double REWARD_PER_LOST_STEP = -10.0;
+
+    /** Problem spec for the current problem **/
+    private ProblemSpec ps;
+    /** Number of car types and drivers **/
+    private int CT;
+    private int DT;
+    /** The distribution of each combination **/
+    private AliasTable[] tables;
+    /** R(s, MOVE) of each combination, indexed like the tables **/
+    private double[] moveRewards;
+
+    /**
+     * Construct the move model of a problem
+     *
+     * @param ps the problem spec
+     */
+    public MoveModel(ProblemSpec ps) {
+        this.ps = ps;
+        this.CT = ps.getCT();
+        this.DT = ps.getDT();
+        int size = ps.getNT() * CT * DT * ProblemSpec.NUM_TYRE_MODELS * ProblemSpec.TIRE_PRESSURE_LEVELS;
+        this.tables = new AliasTable[size];
+        this.moveRewards = new double[size];
+        for (int terrainIndex = 0; terrainIndex < ps.getNT(); terrainIndex++) {
+            for (int carIndex = 0; carIndex < CT; carIndex++) {
+                for (int driverIndex = 0; driverIndex < DT; driverIndex++) {
+                    for (int tireIndex = 0; tireIndex < ProblemSpec.NUM_TYRE_MODELS; tireIndex++) {
+                        for (TirePressure pressure : TirePressure.values()) {
+                            int i = indexOf(terrainIndex, carIndex, driverIndex, tireIndex, pressure);
+                            tables[i] = new AliasTable(computeMoveProbs(terrainIndex, carIndex,
+                                    driverIndex, tireIndex, pressure));
+                            moveRewards[i] = computeMoveReward(terrainIndex, carIndex, driverIndex,
+                                    tireIndex, pressure);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the move distribution when moving from a state
+     *
+     * @param state the state the car moves from
+     * @return the move distribution
+     */
+    public AliasTable get(State state) {
+        return get(state.getTerrainIndex(ps), state.getCarIndex(ps),
+                state.getDriverIndex(ps), state.getTireIndex(ps), state.getTirePressure());
+    }
+
+    /**
+     * Get the move distribution of a combination of parameters
+     *
+     * @param terrainIndex the terrain index
+     * @param carIndex the car index
+     * @param driverIndex the driver index
+     * @param tireIndex the tire model index
+     * @param pressure the tire pressure
+     * @return the move distribution
+     */
+    public AliasTable get(int terrainIndex, int carIndex, int driverIndex, int tireIndex,
+                          TirePressure pressure) {
+        return tables[indexOf(terrainIndex, carIndex, driverIndex, tireIndex, pressure)];
+    }
+
+    /**
+     * Get the expected reward of moving from a state, R(s, MOVE)
+     *
+     * @param state the state the car moves from, with enough fuel to move
+     * @return the expected reward
+     */
+    public double getMoveReward(State state) {
+        return moveRewards[indexOf(state.getTerrainIndex(ps), state.getCarIndex(ps),
+                state.getDriverIndex(ps), state.getTireIndex(ps), state.getTirePressure())];
+    }
+
+    /**
+     * Get the expected reward of moving for every combination of parameters
+     *
+     * @return the rewards, indexed like the distributions:
+     *      (((terrain * CT + car) * DT + driver) * 4 + tire) * 3 + pressure ordinal
+     */
+    public double[] getMoveRewards() {
+        return moveRewards;
+    }
+
+    private int indexOf(int terrainIndex, int carIndex, int driverIndex, int tireIndex,
+                        TirePressure pressure) {
+        return (((terrainIndex * CT + carIndex) * DT + driverIndex)
+                * ProblemSpec.NUM_TYRE_MODELS + tireIndex) * ProblemSpec.TIRE_PRESSURE_LEVELS
+                + pressure.ordinal();
+    }
+
+    /**
+     * Calculate the expected reward of moving for a combination of
+     * parameters: 5 per cell moved, less the fuel consumed, and -10 per step
+     * lost to a slip or breakdown
+     *
+     * @return the expected reward
+     */
+    private double computeMoveReward(int terrainIndex, int carIndex, int driverIndex,
+                                     int tireIndex, TirePressure pressure) {
+        double[] moveProbs = computeMoveProbs(terrainIndex, carIndex, driverIndex, tireIndex, pressure);
+        int fuelConsumption = ps.getFuelConsumption(terrainIndex, carIndex, pressure);
+        double expectedReward = 0.0;
+        for (int k = 0; k < SLIP_INDEX; k++) {
+            int distance = k + ProblemSpec.CAR_MIN_MOVE;
+            expectedReward += moveProbs[k] * (REWARD_PER_CELL * distance - fuelConsumption);
+        }
+        expectedReward += REWARD_PER_LOST_STEP * moveProbs[SLIP_INDEX] * ps.getSlipRecoveryTime();
+        expectedReward += REWARD_PER_LOST_STEP * moveProbs[BREAKDOWN_INDEX] * ps.getRepairTime();
+        return expectedReward;
+    }
+
+    /**
+     * Calculate the conditional move probabilities for a combination of
+     * parameters.
+     *
+     * @return list of move probabilities
+     */
+    private double[] computeMoveProbs(int terrainIndex, int carIndex, int driverIndex,
+                                      int tireIndex, TirePressure pressure) {
+
+        // calculate priors
+        double priorK = 1.0 / ProblemSpec.CAR_MOVE_RANGE;
+        double priorCar = 1.0 / ps.getCT();
+        double priorDriver = 1.0 / ps.getDT();
+        double priorTire = 1.0 / ProblemSpec.NUM_TYRE_MODELS;
+        double priorTerrain = 1.0 / ps.getNT();
+        double priorPressure = 1.0 / ProblemSpec.TIRE_PRESSURE_LEVELS;
+
+        // get probabilities of k given parameter
+        double[] pKGivenCar = ps.getCarMoveProbability().get(ps.getCarOrder().get(carIndex));
+        double[] pKGivenDriver = ps.getDriverMoveProbability().get(ps.getDriverOrder().get(driverIndex));
+        double[] pKGivenTire = ps.getTireModelMoveProbability().get(ps.getTireOrder().get(tireIndex));
+        double pSlipGivenTerrain = ps.getSlipProbability()[terrainIndex];
+        double[] pKGivenPressureTerrain = convertSlipProbs(pSlipGivenTerrain, pressure);
+
+        // use bayes rule to get probability of parameter given k
+        double[] pCarGivenK = bayesRule(pKGivenCar, priorCar, priorK);
+        double[] pDriverGivenK = bayesRule(pKGivenDriver, priorDriver, priorK);
+        double[] pTireGivenK = bayesRule(pKGivenTire, priorTire, priorK);
+        double[] pPressureTerrainGivenK = bayesRule(pKGivenPressureTerrain,
+                (priorTerrain * priorPressure), priorK);
+
+        // use conditional probability formula on assignment sheet to get what
+        // we want (but what is it that we want....)
+        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
+        double kProbsSum = 0;
+        double kProb;
+        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+            kProb = magicFormula(pCarGivenK[k], pDriverGivenK[k],
+                    pTireGivenK[k], pPressureTerrainGivenK[k], priorK);
+            kProbsSum += kProb;
+            kProbs[k] = kProb;
+        }
+
+        if (kProbsSum <= 0) {
+            // no move is possible with these parameters, the car stays put
+            kProbs[STAY_INDEX] = 1.0;
+            return kProbs;
+        }
+
+        // Normalize
+        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+            kProbs[k] /= kProbsSum;
+        }
+
+        return kProbs;
+    }
+
+    /**
+     * Convert the probability of slipping on a given terrain with 50% tire
+     * pressure into a probability list, of move distance versus current
+     * terrain and tire pressure.
+     *
+     * @param slipProb probability of slipping on current terrain and 50%
+     *                 tire pressure
+     * @param pressure the current tire pressure
+     * @return list of move probabilities given current terrain and pressure
+     */
+    private double[] convertSlipProbs(double slipProb, TirePressure pressure) {
+
+        // Adjust slip probability based on tire pressure
+        if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
+            slipProb *= 2;
+        } else if (pressure == TirePressure.ONE_HUNDRED_PERCENT) {
+            slipProb *= 3;
+        }
+        // Make sure new probability is not above max
+        if (slipProb > ProblemSpec.MAX_SLIP_PROBABILITY) {
+            slipProb = ProblemSpec.MAX_SLIP_PROBABILITY;
+        }
+
+        // for each terrain, all other action probabilities are uniform over
+        // remaining probability
+        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
+        double leftOver = 1 - slipProb;
+        double otherProb = leftOver / (ProblemSpec.CAR_MOVE_RANGE - 1);
+        for (int i = 0; i < ProblemSpec.CAR_MOVE_RANGE; i++) {
+            if (i == SLIP_INDEX) {
+                kProbs[i] = slipProb;
+            } else {
+                kProbs[i] = otherProb;
+            }
+        }
+
+        return kProbs;
+    }
+
+    /**
+     * Apply bayes rule to all values in cond probs list.
+     *
+     * @param condProb list of P(B|A)
+     * @param priorA prior probability of parameter A
+     * @param priorB prior probability of parameter B
+     * @return list of P(A|B)
+     */
+    private double[] bayesRule(double[] condProb, double priorA, double priorB) {
+
+        double[] swappedProb = new double[condProb.length];
+
+        for (int i = 0; i < condProb.length; i++) {
+            swappedProb[i] = (condProb[i] * priorA) / priorB;
+        }
+        return swappedProb;
+    }
+
+    /**
+     * Conditional probability formula from assignment 2 sheet
+     *
+     * @param pA P(A | E)
+     * @param pB P(B | E)
+     * @param pC P(C | E)
+     * @param pD P(D | E)
+     * @param priorE P(E)
+     * @return numerator of the P(E | A, B, C, D) formula (still need to divide
+     *      by sum over E)
+     */
+    private double magicFormula(double pA, double pB, double pC, double pD,
+                               double priorE) {
+        return pA * pB * pC * pD * priorE;
+    }
+}
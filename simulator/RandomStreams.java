@@ -0,0 +1,81 @@
+package simulator;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * A family of independent random number streams derived from one master
+ * seed. Stream i always gets the same seed, so a parallel run that gives each
+ * episode or trial its own stream is reproducible whatever the number of
+ * threads or the order the streams are used in.
+ *
+ * Stream seeds are derived with the SplitMix64 mixing function, so nearby
+ * master seeds and stream ids still give unrelated streams.
+ */
+public class RandomStreams {
+
+    /** Default generator algorithm, a fast LXM generator with 2^192 period **/
+    public static final String DEFAULT_ALGORITHM = "L64X128MixRandom";
+    /** Golden ratio increment of SplitMix64 **/
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** Factory for the generator algorithm **/
+    private RandomGeneratorFactory<RandomGenerator> factory;
+    /** The master seed **/
+    private long seed;
+
+    /**
+     * Construct the streams for a master seed using the default algorithm
+     *
+     * @param seed the master seed
+     */
+    public RandomStreams(long seed) {
+        this(DEFAULT_ALGORITHM, seed);
+    }
+
+    /**
+     * Construct the streams for a master seed
+     *
+     * @param algorithm name of the generator algorithm, e.g.
+     *                  "L64X128MixRandom" or "SplittableRandom"
+     * @param seed the master seed
+     */
+    public RandomStreams(String algorithm, long seed) {
+        this.factory = RandomGeneratorFactory.of(algorithm);
+        this.seed = seed;
+    }
+
+    /**
+     * Create the generator for a stream
+     *
+     * @param streamId the stream id, e.g. the episode or trial number
+     * @return a new generator, the same sequence for the same seed and id
+     */
+    public RandomGenerator stream(long streamId) {
+        return factory.create(deriveSeed(seed, streamId));
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Derive the seed of a stream from the master seed
+     *
+     * @param seed the master seed
+     * @param streamId the stream id
+     * @return the stream seed
+     */
+    public static long deriveSeed(long seed, long streamId) {
+        return mix64(mix64(seed) + (streamId + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
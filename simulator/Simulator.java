@@ -8,6 +8,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 
 /**
  * This class is the simulator for the problem.
@@ -24,6 +25,14 @@ public class Simulator {
     /** Whether to print progress messages or not
      * Feel free to change this if you don't want messages printed **/
     private boolean verbose = true;
+    /** Whether to skip recording steps and writing the output file **/
+    private boolean headless;
+    /** Move distributions for the problem, shared with copies **/
+    private MoveModel moveModel;
+    /** Counters of the episodes and steps simulated, shared with copies **/
+    private SimulatorMetrics metrics = new SimulatorMetrics();
+    /** Random number generator used for sampling moves **/
+    private RandomGenerator random = RandomGenerator.getDefault();
     /** A container to store steps for output **/
     private List<Step> stepRecord;
     /** path and name for output file **/
@@ -39,12 +48,87 @@ public class Simulator {
      * @param outputFile the path for output file
      */
     public Simulator(ProblemSpec ps, String outputFile) {
-        System.out.println("Simulator: THIS IS THE OFFICIAL SUPPORT CODE");
+        this(ps, outputFile, true);
+    }
+
+    /**
+     * Construct a new simulator instance from the given problem spec
+     *
+     * @param ps the ProblemSpec
+     * @param outputFile the path for output file
+     * @param verbose whether to print progress messages
+     */
+    public Simulator(ProblemSpec ps, String outputFile, boolean verbose) {
+        this.verbose = verbose;
+        if (verbose) {
+            System.out.println("Simulator: THIS IS THE OFFICIAL SUPPORT CODE");
+        }
         this.ps = ps;
+        this.moveModel = ps.getMoveModel();
         this.outputFile = outputFile;
         reset();
     }
 
+    /**
+     * Construct a headless simulator instance from the given problem spec.
+     * A headless simulator prints nothing, records no steps and writes no
+     * output file, which makes it cheap enough for lookahead and evaluation.
+     *
+     * @param ps the ProblemSpec
+     */
+    public Simulator(ProblemSpec ps) {
+        this(ps, ps.getMoveModel());
+    }
+
+    /**
+     * Construct a headless simulator instance sharing a move model with other
+     * simulators of the same problem, e.g. the workers of an evaluation
+     *
+     * @param ps the ProblemSpec
+     * @param moveModel the move model for the problem
+     */
+    public Simulator(ProblemSpec ps, MoveModel moveModel) {
+        this.verbose = false;
+        this.headless = true;
+        this.ps = ps;
+        this.moveModel = moveModel;
+        reset();
+    }
+
+    /**
+     * Construct a headless simulator instance sampling from the given random
+     * number generator
+     *
+     * @param ps the ProblemSpec
+     * @param random the random number generator to sample moves from
+     */
+    public Simulator(ProblemSpec ps, RandomGenerator random) {
+        this(ps);
+        this.random = random;
+    }
+
+    /**
+     * Construct a copy of another simulator, without resetting it
+     *
+     * @param other the simulator to copy
+     */
+    private Simulator(Simulator other) {
+        this.ps = other.ps;
+        this.outputFile = other.outputFile;
+        this.currentState = other.currentState;
+        this.steps = other.steps;
+        this.verbose = other.verbose;
+        this.headless = other.headless;
+        this.random = other.random;
+        this.moveModel = other.moveModel;
+        this.metrics = other.metrics;
+        if (!headless) {
+            this.stepRecord = new ArrayList<>(other.stepRecord);
+        }
+        this.startTime = other.startTime;
+        this.lastStepTime = other.lastStepTime;
+    }
+
     /**
      * Construct a new simulator instance from the given input file
      *
@@ -62,11 +146,14 @@ public class Simulator {
      * @return the start state
      */
     public State reset() {
+        metrics.recordEpisode();
         steps = 0;
         currentState = State.getStartState(ps.getFirstCarType(),
                 ps.getFirstDriver(), ps.getFirstTireModel());
-        stepRecord = new ArrayList<>();
-        stepRecord.add(new Step(-1, currentState.copyState(), null));
+        if (!headless) {
+            stepRecord = new ArrayList<>();
+            stepRecord.add(new Step(-1, currentState.copyState(), null));
+        }
         if (verbose) {
             System.out.println("Simulator: Resetting simulator");
             System.out.println("Simulator: \tStart " + currentState.toString());
@@ -77,6 +164,16 @@ public class Simulator {
         return currentState.copyState();
     }
 
+    /**
+     * Perform the action with a code of the problem's ActionCatalog
+     *
+     * @param code the code of the action to perform
+     * @return the next state or null if max time steps exceeded for problem
+     */
+    public State step(int code) throws IllegalArgumentException {
+        return step(ps.getActionCatalog().getAction(code));
+    }
+
     /**
      * Perform an action against environment and receive the next state.
      *
@@ -84,6 +181,23 @@ public class Simulator {
      * @return the next state or null if max time steps exceeded for problem
      */
     public State step(Action a) throws IllegalArgumentException {
+        StepEvent event = new StepEvent();
+        event.begin();
+        int position = currentState.getPos();
+        metrics.recordStep();
+        State nextState = performStep(a);
+        if (event.shouldCommit()) {
+            event.position = position;
+            event.actionType = a.getActionType().getActionNo();
+            event.nextPosition = nextState == null ? -1 : nextState.getPos();
+            event.steps = steps;
+            event.headless = headless;
+            event.commit();
+        }
+        return nextState;
+    }
+
+    private State performStep(Action a) {
 
         State nextState;
 
@@ -109,34 +223,18 @@ public class Simulator {
             printTimeSinceLastStep();
         }
 
-        switch(a.getActionType().getActionNo()) {
-            case 1:
-                nextState = performA1();
-                break;
-            case 2:
-                nextState = performA2(a);
-                break;
-            case 3:
-                nextState = performA3(a);
-                break;
-            case 4:
-                nextState = performA4(a);
-                break;
-            case 5:
-                nextState = performA5(a);
-                break;
-            case 6:
-                nextState = performA6(a);
-                break;
-            case 7:
-                nextState = performA7(a);
-                break;
-            default:
-                nextState = performA8(a);
+        if (a.getActionType() == ActionType.MOVE) {
+            nextState = performA1();
+        } else {
+            nextState = performAction(currentState, a);
+            // refuelling takes several steps (minus 1 since we add 1 later)
+            steps += getActionTime(a) - 1;
         }
 
         // add step to record for outputting
-        stepRecord.add(new Step(steps, nextState, a));
+        if (!headless) {
+            stepRecord.add(new Step(steps, nextState, a));
+        }
 
         // handle slip and breakdown cases, we do this now so we can generate
         // correct output format
@@ -189,7 +287,7 @@ public class Simulator {
         State nextState;
 
         // check there is enough fuel to make move in current state
-        int fuelRequired = getFuelConsumption();
+        int fuelRequired = getFuelConsumption(currentState);
         int currentFuel = currentState.getFuel();
         if (fuelRequired > currentFuel) {
             return currentState;
@@ -226,282 +324,231 @@ public class Simulator {
 
     /**
      * Return the move distance by sampling from conditional probability
-     * distribution.
-     *
-     * N.B. this formula is not at all optimized for performance, so be wary if
-     * trying to use it for finding a policy
+     * distribution, using the alias table of the current state's parameters
+     * (one random draw and two array loads).
      *
      * @return the move distance in range [-4, 5] or SLIP or BREAKDOWN
      */
     private int sampleMoveDistance() {
-
-        double[] moveProbs = getMoveProbs();
-
-        double p = Math.random();
-        double pSum = 0;
-        int move = 0;
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            pSum += moveProbs[k];
-            if (p <= pSum) {
-                move = ps.convertIndexIntoMove(k);
-                break;
-            }
-        }
-        return move;
+        int k = moveModel.get(currentState).sample(random);
+        return ps.convertIndexIntoMove(k);
     }
 
     /**
-     * Calculate the conditional move probabilities for the current state.
+     * Get the conditional move probabilities for the given state.
      *
      *          P(K | C, D, Ti, Te, Pressure)
      *
+     * The returned array is shared and must not be modified.
+     *
+     * @param state the state the car moves from
      * @return list of move probabilities
      */
-    private double[] getMoveProbs() {
-
-        // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[currentState.getPos() - 1];
-        int terrainIndex = ps.getTerrainIndex(terrain);
-        String car = currentState.getCarType();
-        // System.out.println("*************car: " + car);
-        // print state
-        // System.out.println("ProblemSpec---getMoveProbs: fqq currentState: " + currentState.toString());
-        String driver = currentState.getDriver();
-        Tire tire = currentState.getTireModel();
-
-        // calculate priors
-        double priorK = 1.0 / ProblemSpec.CAR_MOVE_RANGE;
-        double priorCar = 1.0 / ps.getCT();
-        double priorDriver = 1.0 / ps.getDT();
-        double priorTire = 1.0 / ProblemSpec.NUM_TYRE_MODELS;
-        double priorTerrain = 1.0 / ps.getNT();
-        double priorPressure = 1.0 / ProblemSpec.TIRE_PRESSURE_LEVELS;
-
-        // get probabilities of k given parameter
-        double[] pKGivenCar = ps.getCarMoveProbability().get(car);
-        // System.out.println("*************");
-        // System.out.println("Simulator---getMoveProbs: fqq pKGivenCar: " + pKGivenCar[0]);
-        // System.out.println("*************");
-        double[] pKGivenDriver = ps.getDriverMoveProbability().get(driver);
-        double[] pKGivenTire = ps.getTireModelMoveProbability().get(tire);
-        double pSlipGivenTerrain = ps.getSlipProbability()[terrainIndex];
-        double[] pKGivenPressureTerrain = convertSlipProbs(pSlipGivenTerrain);
-
-        // use bayes rule to get probability of parameter given k
-        double[] pCarGivenK = bayesRule(pKGivenCar, priorCar, priorK);
-        double[] pDriverGivenK = bayesRule(pKGivenDriver, priorDriver, priorK);
-        double[] pTireGivenK = bayesRule(pKGivenTire, priorTire, priorK);
-        double[] pPressureTerrainGivenK = bayesRule(pKGivenPressureTerrain,
-                (priorTerrain * priorPressure), priorK);
-
-        // use conditional probability formula on assignment sheet to get what
-        // we want (but what is it that we want....)
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double kProbsSum = 0;
-        double kProb;
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProb = magicFormula(pCarGivenK[k], pDriverGivenK[k],
-                    pTireGivenK[k], pPressureTerrainGivenK[k], priorK);
-            kProbsSum += kProb;
-            kProbs[k] = kProb;
-        }
-
-        // Normalize
-        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
-            kProbs[k] /= kProbsSum;
-        }
-
-        return kProbs;
+    public double[] getMoveProbs(State state) {
+        return moveModel.get(state).getProbabilities();
     }
 
     /**
-     * Convert the probability of slipping on a given terrain with 50% tire
-     * pressure into a probability list, of move distance versus current
-     * terrain and tire pressure.
+     * Get the fuel consumption of moving given a state
      *
-     * @param slipProb probability of slipping on current terrain and 50%
-     *                 tire pressure
-     * @return list of move probabilities given current terrain and pressure
+     * @param state the state the car moves from
+     * @return move fuel consumption for the state
      */
-    private double[] convertSlipProbs(double slipProb) {
-
-        // Adjust slip probability based on tire pressure
-        TirePressure pressure = currentState.getTirePressure();
-        if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
-            slipProb *= 2;
-        } else if (pressure == TirePressure.ONE_HUNDRED_PERCENT) {
-            slipProb *= 3;
-        }
-        // Make sure new probability is not above max
-        if (slipProb > ProblemSpec.MAX_SLIP_PROBABILITY) {
-            slipProb = ProblemSpec.MAX_SLIP_PROBABILITY;
-        }
-
-        // for each terrain, all other action probabilities are uniform over
-        // remaining probability
-        double[] kProbs = new double[ProblemSpec.CAR_MOVE_RANGE];
-        double leftOver = 1 - slipProb;
-        double otherProb = leftOver / (ProblemSpec.CAR_MOVE_RANGE - 1);
-        for (int i = 0; i < ProblemSpec.CAR_MOVE_RANGE; i++) {
-            if (i == ps.getIndexOfMove(ProblemSpec.SLIP)) {
-                kProbs[i] = slipProb;
-            } else {
-                kProbs[i] = otherProb;
-            }
-        }
-
-        return kProbs;
+    private int getFuelConsumption(State state) {
+        return ps.getFuelConsumption(state.getTerrainIndex(ps), state.getCarIndex(ps),
+                state.getTirePressure());
     }
 
     /**
-     * Apply bayes rule to all values in cond probs list.
+     * Perform any action other than MOVE, which are all deterministic
      *
-     * @param condProb list of P(B|A)
-     * @param priorA prior probability of parameter A
-     * @param priorB prior probability of parameter B
-     * @return list of P(A|B)
+     * @param state the state the action is performed in
+     * @param a the action to perform
+     * @return the next state
      */
-    private double[] bayesRule(double[] condProb, double priorA, double priorB) {
-
-        double[] swappedProb = new double[condProb.length];
-
-        for (int i = 0; i < condProb.length; i++) {
-            swappedProb[i] = (condProb[i] * priorA) / priorB;
+    private State performAction(State state, Action a) {
+        switch (a.getActionType()) {
+            case CHANGE_CAR:
+                return performA2(state, a);
+            case CHANGE_DRIVER:
+                return performA3(state, a);
+            case CHANGE_TIRES:
+                return performA4(state, a);
+            case ADD_FUEL:
+                return performA5(state, a);
+            case CHANGE_PRESSURE:
+                return performA6(state, a);
+            case CHANGE_CAR_AND_DRIVER:
+                return performA7(state, a);
+            default:
+                return performA8(state, a);
         }
-        return swappedProb;
-    }
-
-    /**
-     * Conditional probability formula from assignment 2 sheet
-     *
-     * @param pA P(A | E)
-     * @param pB P(B | E)
-     * @param pC P(C | E)
-     * @param pD P(D | E)
-     * @param priorE P(E)
-     * @return numerator of the P(E | A, B, C, D) formula (still need to divide
-     *      by sum over E)
-     */
-    private double magicFormula(double pA, double pB, double pC, double pD,
-                               double priorE) {
-        return pA * pB * pC * pD * priorE;
     }
 
     /**
-     * Get the fuel consumption of moving given the current state
+     * Get the number of steps an action other than MOVE takes. Refuelling
+     * takes one step per 10 units of fuel, everything else a single step,
+     * see ActionCatalog.durationOf.
      *
-     * @return move fuel consumption for current state
+     * @param a the action
+     * @return number of steps the action takes
      */
-    private int getFuelConsumption() {
-
-        // get parameters of current state
-        Terrain terrain = ps.getEnvironmentMap()[currentState.getPos() - 1];
-        String car = currentState.getCarType();
-        TirePressure pressure = currentState.getTirePressure();
-
-        // get fuel consumption
-        int terrainIndex = ps.getTerrainIndex(terrain);
-        int carIndex = ps.getCarIndex(car);
-        int fuelConsumption = ps.getFuelUsage()[terrainIndex][carIndex];
-
-        if (pressure == TirePressure.FIFTY_PERCENT) {
-            fuelConsumption *= 3;
-        } else if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
-            fuelConsumption *= 2;
-        }
-        return fuelConsumption;
+    private int getActionTime(Action a) {
+        return ActionCatalog.durationOf(a);
     }
 
     /**
      * Perform CHANGE_CAR action
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_CAR action object
      * @return the next state
      */
-    private State performA2(Action a) {
+    private State performA2(State state, Action a) {
 
-        if (currentState.getCarType().equals(a.getCarType())) {
+        if (state.getCarType().equals(a.getCarType())) {
             // changing to same car type does not change state but still costs a step
             // no cheap refill here, muhahaha
-            return currentState;
+            return state;
         }
 
-        return currentState.changeCarType(a.getCarType());
+        return state.changeCarType(a.getCarType());
     }
 
     /**
      * Perform CHANGE_DRIVER action
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_DRIVER action object
      * @return the next state
      */
-    private State performA3(Action a) { return currentState.changeDriver(a.getDriverType()); }
+    private State performA3(State state, Action a) { return state.changeDriver(a.getDriverType()); }
 
     /**
      * Perform the CHANGE_TIRES action
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_TIRES action object
      * @return the next state
      */
-    private State performA4(Action a) {
-        return currentState.changeTires(a.getTireModel());
+    private State performA4(State state, Action a) {
+        return state.changeTires(a.getTireModel());
     }
 
     /**
-     * Perform the ADD_FUEL action
+     * Perform the ADD_FUEL action, the refuelling time is added in step
      *
+     * @param state the state the action is performed in
      * @param a a ADD_FUEL action object
      * @return the next state
      */
-    private State performA5(Action a) {
-        // calculate number of steps used for refueling (minus 1 since we add
-        // 1 in main function
-        int stepsRequired = (int) Math.ceil(a.getFuel() / (float) 10);
-        steps += (stepsRequired - 1);
-        return currentState.addFuel(a.getFuel());
+    private State performA5(State state, Action a) {
+        return state.addFuel(a.getFuel());
     }
 
     /**
      * Perform the CHANGE_PRESSURE action
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_PRESSURE action object
      * @return the next state
      */
-    private State performA6(Action a) {
-        return currentState.changeTirePressure(a.getTirePressure());
+    private State performA6(State state, Action a) {
+        return state.changeTirePressure(a.getTirePressure());
     }
 
     /**
      * Perform the CHANGE_CAR_AND_DRIVER action
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_CAR_AND_DRIVER action object
      * @return the next state
      */
-    private State performA7(Action a) {
+    private State performA7(State state, Action a) {
 
-        if (currentState.getCarType().equals(a.getCarType())) {
+        if (state.getCarType().equals(a.getCarType())) {
             // if car the same, only change driver so no sneaky fuel exploit
-            return currentState.changeDriver(a.getDriverType());
+            return state.changeDriver(a.getDriverType());
         }
-        return currentState.changeCarAndDriver(a.getCarType(),
+        return state.changeCarAndDriver(a.getCarType(),
                 a.getDriverType());
     }
 
     /**
-     * Perform the CHANGE_TIRE_FUEL_PRESSURE action
+     * Perform the CHANGE_TIRE_FUEL_PRESSURE action, the refuelling time is
+     * added in step
      *
+     * @param state the state the action is performed in
      * @param a a CHANGE_TIRE_FUEL_PRESSURE action object
      * @return the next state
      */
-    private State performA8(Action a) {
-        // calculate number of steps used for refueling (minus 1 since we add
-        // 1 in main function
-        int stepsRequired = (int) Math.ceil(a.getFuel() / (float) 10);
-        steps += (stepsRequired - 1);
-        return currentState.changeTireFuelAndTirePressure(a.getTireModel(),
+    private State performA8(State state, Action a) {
+        return state.changeTireFuelAndTirePressure(a.getTireModel(),
                 a.getFuel(), a.getTirePressure());
     }
 
+    /**
+     * Get every possible outcome of performing an action in a state, with its
+     * probability and the number of steps it takes. Slip and breakdown are
+     * already resolved, i.e. the next states are as returned by step.
+     *
+     * @param state the state the action is performed in
+     * @param code the code of the action in the problem's ActionCatalog
+     * @return the possible transitions, probabilities sum to 1
+     */
+    public List<Transition> getTransitions(State state, int code) {
+        return getTransitions(state, ps.getActionCatalog().getAction(code));
+    }
+
+    /**
+     * Get every possible outcome of performing an action in a state, with its
+     * probability and the number of steps it takes. Slip and breakdown are
+     * already resolved, i.e. the next states are as returned by step.
+     *
+     * @param state the state the action is performed in
+     * @param a the action to perform
+     * @return the possible transitions, probabilities sum to 1
+     */
+    public List<Transition> getTransitions(State state, Action a) {
+        List<Transition> transitions = new ArrayList<>();
+        if (a.getActionType() != ActionType.MOVE) {
+            transitions.add(new Transition(performAction(state, a), 1.0, getActionTime(a)));
+            return transitions;
+        }
+
+        int fuelRequired = getFuelConsumption(state);
+        if (fuelRequired > state.getFuel()) {
+            // not enough fuel, the car stays where it is
+            transitions.add(new Transition(state, 1.0, 1));
+            return transitions;
+        }
+        boolean consumeFuel = ps.getLevel().getLevelNumber() > 1;
+        double[] moveProbs = getMoveProbs(state);
+        for (int k = 0; k < ProblemSpec.CAR_MOVE_RANGE; k++) {
+            if (moveProbs[k] <= 0) {
+                continue;
+            }
+            int move = ps.convertIndexIntoMove(k);
+            State nextState;
+            int duration;
+            if (move == ProblemSpec.SLIP) {
+                nextState = state;
+                duration = ps.getSlipRecoveryTime();
+            } else if (move == ProblemSpec.BREAKDOWN) {
+                nextState = state;
+                duration = ps.getRepairTime();
+            } else {
+                nextState = state.changePosition(move, ps.getN());
+                duration = 1;
+            }
+            if (consumeFuel) {
+                nextState = nextState.consumeFuel(fuelRequired);
+            }
+            transitions.add(new Transition(nextState, moveProbs[k], duration));
+        }
+        return transitions;
+    }
+
     /**
      * Check whether a given state is the goal state or not
      *
@@ -524,6 +571,45 @@ public class Simulator {
         return steps;
     }
 
+    public MoveModel getMoveModel() {
+        return moveModel;
+    }
+
+    public SimulatorMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Record the episodes and steps of this simulator and its later copies
+     * in the given metrics, e.g. to count the work of several simulators
+     * together
+     *
+     * @param metrics the metrics
+     */
+    public void setMetrics(SimulatorMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the random number generator moves are sampled from. Copies of this
+     * simulator share it.
+     *
+     * @return the random number generator
+     */
+    public RandomGenerator getRandom() {
+        return random;
+    }
+
+    /**
+     * Set the random number generator to sample moves from, e.g. a stream
+     * from RandomStreams to make a run reproducible
+     *
+     * @param random the random number generator
+     */
+    public void setRandom(RandomGenerator random) {
+        this.random = random;
+    }
+
     /**
      * Get the current state of the environment
      *
@@ -540,9 +626,16 @@ public class Simulator {
      */
     private void outputSteps(boolean goalReached) {
 
-        System.out.println("Simulator: Writing steps to output file");
-        printTime();
-        System.out.println("Simulator: Total time taken: " + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+        if (headless) {
+            return;
+        }
+        TrajectoryFlushEvent event = new TrajectoryFlushEvent();
+        event.begin();
+        if (verbose) {
+            System.out.println("Simulator: Writing steps to output file");
+            printTime();
+            System.out.println("Simulator: Total time taken: " + ((System.currentTimeMillis() - startTime) / 1000) + " seconds");
+        }
 
         try (BufferedWriter output = new BufferedWriter(new FileWriter(outputFile))) {
 
@@ -570,6 +663,12 @@ public class Simulator {
                 System.out.println("Simulator: Computer says no. Max steps reached: max steps = " + ps.getMaxT());
             }
         }
+        if (event.shouldCommit()) {
+            event.outputFile = outputFile;
+            event.records = stepRecord.size();
+            event.goalReached = goalReached;
+            event.commit();
+        }
     }
 
     private void printTime() {
@@ -582,11 +681,30 @@ public class Simulator {
         System.out.println("Simulator: Time since last action: " + timePassed + " seconds");
     }
 
-    public boolean isValidFuelToMove(int fuel) {
-        // check there is enough fuel to make move in current state
-        return fuel >= getFuelConsumption();
+    /**
+     * Check whether there is enough fuel to move in the given state
+     *
+     * @param state the state to check
+     * @return True if the car can move, False otherwise
+     */
+    public boolean isValidFuelToMove(State state) {
+        return state.getFuel() >= getFuelConsumption(state);
     }
     
+    /**
+     * calculate the expected reward for a given state and action
+     * @param currentState current state
+     * @param code the code of the action in the problem's ActionCatalog
+     * @return immediate reward
+     */
+    public double getReward(State currentState, int code) {
+        if (isGoalState(currentState)) {
+            return 100.0;
+        }
+        ActionCatalog catalog = ps.getActionCatalog();
+        return code == catalog.getMoveCode() ? moveModel.getMoveReward(currentState) : catalog.getReward(code);
+    }
+
     /**
      * calculate the expected reward for a given state and action
      * @param currentState current state
@@ -620,8 +738,10 @@ public class Simulator {
                     break;
                 
                 case ADD_FUEL:
-                    // for add fuel action, A5, calculate the expected reward, calculate the waiting time, -5.0*ceil(fuel/10)
-                    reward = -5.0 * Math.ceil(action.getFuel() / 10.0);
+                case CHANGE_TIRE_FUEL_PRESSURE:
+                    // for add fuel and change tire, fuel and pressure actions, A5, A8, -5 per step of
+                    // refuelling, -5.0*max(1, ceil(fuel/10)), the tires and pressure change meanwhile
+                    reward = -5.0 * ActionCatalog.durationOf(action);
                     break;
                 
                 case CHANGE_CAR_AND_DRIVER:
@@ -629,11 +749,6 @@ public class Simulator {
                     reward = -5.0; 
                     break;
 
-                case CHANGE_TIRE_FUEL_PRESSURE:
-                    // for change tire, fuel and pressure action, A8, set the reward to the maximum of time cost 
-                    reward = Math.max(-5, -5.0 * Math.ceil(action.getFuel() / 10));
-                    break;
-
                 default:
                     // for other actions, set the reward to 0, should not happen
                     reward = 0.0;
@@ -651,64 +766,9 @@ public class Simulator {
      * @return double move reward
      */
     public double calculateMoveReward(State currentState, Action action) {
-        // get every possible move distance probability, P(k)
-        double[] moveProbs = getMoveProbs();
-        // // print moveProbs
-        // for (int i = 0; i < moveProbs.length; i++) {
-        //     System.out.println("Simulator---calculateMoveReward: fqq moveProbs[" + i + "]: " + moveProbs[i]);
-        // }
-
-        double expectedReward = 0.0;
-
-        // traverse all possible move distances, calculate the cost of each distance
-        for (int k = 0; k < moveProbs.length; k++) {
-            int distance = k + ProblemSpec.CAR_MIN_MOVE; // get the move distance k
-            if (distance <= ProblemSpec.CAR_MAX_MOVE) {
-                // System.out.println("Simulator---calculateMoveReward: fqq car moving with k: " + (k+ProblemSpec.CAR_MIN_MOVE));
-                double moveProb = moveProbs[k];  // get the probability P(k) of moving k steps
-                // calculate the cost of moving k steps
-                double moveCost = calculateMoveCost(currentState, distance);
-                // calculate the expected reward (negative means punishment)
-                expectedReward += moveProb * (distance*5 -moveCost);
-                
-            }else if (distance == ProblemSpec.SLIP) {
-                // slip 
-                // System.out.println("Simulator---calculateMoveReward: fqq slip with k: " + k);
-                expectedReward += -10.0 * moveProbs[k] * ps.getSlipRecoveryTime();
-            } else if (distance == ProblemSpec.BREAKDOWN) {
-                // breakdown
-                // System.out.println("Simulator---calculateMoveReward: fqq breakdown with k: " + k);
-                expectedReward += -10.0 * moveProbs[k] * ps.getRepairTime();
-                
-            }
-        }
-
-        // System.out.println("Simulator---calculateMoveReward: fqq expectedReward: " + expectedReward);
-        return expectedReward;
-    }
-
-    /**
-     * Calculate the cost of moving k steps, such as fuel consumption or time penalty
-     * @param currentState current state
-     * @param moveDistance move distance k
-     * @return double move cost
-     */
-    private double calculateMoveCost(State currentState, int moveDistance) {
-
-        // calculate the base cost of moving k steps
-        int baseCost = getFuelConsumption();
-        // System.out.println("Simulator---calculateMoveCost: fqq baseCost: " + baseCost);
-
-        // calculate the cost of moving k steps based on the tire pressure
-        TirePressure pressure = currentState.getTirePressure();
-        if (pressure == TirePressure.FIFTY_PERCENT) {
-            baseCost *= 3;  // 50% pressure fuel consumption is 3 times normal
-        } else if (pressure == TirePressure.SEVENTY_FIVE_PERCENT) {
-            baseCost *= 2;  // 75% pressure fuel consumption is 2 times normal
-        }
-
-        // System.out.println("Simulator---calculateMoveCost: fqq baseCost: " + baseCost);
-        return baseCost;
+        // 5 per cell moved less the fuel consumed, -10 per step lost to a slip or breakdown,
+        // precomputed for every terrain, car, driver, tire model and pressure
+        return moveModel.getMoveReward(currentState);
     }
 
     /**
@@ -725,7 +785,9 @@ public class Simulator {
 
         
         // calculate the move probability for the current state
-        double[] moveProbs = getMoveProbs();
+        double[] moveProbs = getMoveProbs(currentState);
+        // the cost of moving, the fuel consumed whatever the distance
+        double moveCost = getFuelConsumption(currentState);
         // print moveProbs
         // for (int i = 0; i < moveProbs.length; i++) {
         //     System.out.println("Simulator---getFutureValue: fqq moveProbs[" + i + "]: " + moveProbs[i]);
@@ -737,9 +799,6 @@ public class Simulator {
             if (distance <= ProblemSpec.CAR_MAX_MOVE) {
                 // System.out.println("Simulator---getFutureValue: fqq car moving with k: " + (k+ProblemSpec.CAR_MIN_MOVE));
                 double moveProb = moveProbs[k];  // get the probability P(k) of moving k steps
-                // calculate the cost of moving k steps 
-                double moveCost = calculateMoveCost(currentState, distance);
-
                 // calculate the expected reward 
                 futureValue += moveProb * (distance*6-moveCost);
 
@@ -748,10 +807,12 @@ public class Simulator {
                     futureValue += 4.0* distance;
                 }
                 
-            }else{
-                // slip or breakdown
-                // System.out.println("Simulator---getFutureValue: fqq slip or breakdown with k: " + k);
-                futureValue += -20.0 * moveProbs[k];
+            } else if (distance == ProblemSpec.SLIP) {
+                // slip, -10 per step lost beyond the one step a move takes
+                futureValue += -10.0 * moveProbs[k] * (ps.getSlipRecoveryTime() - 1);
+            } else if (distance == ProblemSpec.BREAKDOWN) {
+                // breakdown, -10 per step lost to the repair
+                futureValue += -10.0 * moveProbs[k] * (ps.getRepairTime() - 1);
             }
         }
         // System.out.println("Simulator---getFutureValue: fqq futureValue: " + futureValue);
@@ -765,23 +826,24 @@ public class Simulator {
      *
      */
     public Simulator copySimulator() {
-        Simulator newSimulator = new Simulator(ps, outputFile);
-        // copy variables
-        newSimulator.ps = this.ps;
-        /** path and name for output file **/
-        newSimulator.outputFile = this.outputFile;
-        /** The current state of the environment **/
-        newSimulator.currentState = this.currentState;
-        /** The number of steps taken **/
-        newSimulator.steps = this.steps;
-        /** Whether to print progress messages or not
-         * Feel free to change this if you don't want messages printed **/
-        newSimulator.verbose = this.verbose;
-        /** copy the store steps for output **/
-        newSimulator.stepRecord =  new ArrayList<>(this.stepRecord);
-        /** timer **/
-        newSimulator.startTime = this.startTime;
-        newSimulator.lastStepTime = this.lastStepTime;
+        return new Simulator(this);
+    }
+
+    /**
+     * Create a headless copy of this simulator for looking ahead from a given
+     * state. The copy starts at the state with a fresh step count, so the
+     * lookahead doesn't depend on how far the real run has progressed.
+     *
+     * @param state the state to look ahead from
+     * @return Simulator
+     */
+    public Simulator copySimulator(State state) {
+        Simulator newSimulator = new Simulator(this);
+        newSimulator.verbose = false;
+        newSimulator.headless = true;
+        newSimulator.stepRecord = null;
+        newSimulator.currentState = state;
+        newSimulator.steps = 0;
         return newSimulator;
     }
 
@@ -0,0 +1,43 @@
+package simulator;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the episodes and steps simulated. A simulator shares its
+ * counters with its copies, so the steps of planning trials on headless
+ * copies are counted with the simulator they were copied from, and any
+ * number of simulators may record into one instance, e.g. the workers of a
+ * policy evaluation. The counters are LongAdders, cheap to record on every
+ * step and safe to read from any thread.
+ */
+public class SimulatorMetrics {
+
+    /** Episodes started, i.e. resets **/
+    private final LongAdder episodes = new LongAdder();
+    /** Actions performed **/
+    private final LongAdder steps = new LongAdder();
+
+    void recordEpisode() {
+        episodes.increment();
+    }
+
+    void recordStep() {
+        steps.increment();
+    }
+
+    public long getEpisodes() {
+        return episodes.sum();
+    }
+
+    public long getSteps() {
+        return steps.sum();
+    }
+
+    /**
+     * Clear the counters
+     */
+    public void reset() {
+        episodes.reset();
+        steps.reset();
+    }
+}
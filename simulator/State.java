@@ -16,6 +16,12 @@ import problem.TirePressure;
  * - car tire pressure
  * - the driver
  * - tire model
+ *
+ * The indices of the cell's terrain, the car type, the driver and the tire
+ * model in the input order of the problem are looked up on first use and
+ * kept, and derived states keep the indices that didn't change, so lookups
+ * on the hot paths are field loads. This doesn't change the state, but a
+ * state must only be used with the problem it belongs to.
  */
 public class State {
 
@@ -35,6 +41,12 @@ public class State {
     private String driver;
     /** The tire model **/
     private Tire tireModel;
+    /** Indices of the terrain, car type, driver and tire model in the
+     *  problem's input order, -1 until first looked up **/
+    private int terrainIndex = -1;
+    private int carIndex = -1;
+    private int driverIndex = -1;
+    private int tireIndex = -1;
 
     /**
      * Construct a new state with the given parameter values
@@ -97,6 +109,9 @@ public class State {
         } else {
             nexState.pos += move;
         }
+        if (nexState.pos != pos) {
+            nexState.terrainIndex = -1;
+        }
         return nexState;
     }
 
@@ -133,6 +148,7 @@ public class State {
     public State changeCarType(String newCarType) {
         State nextState = copyState();
         nextState.carType = newCarType;
+        nextState.carIndex = -1;
         nextState.fuel = ProblemSpec.FUEL_MAX;
         nextState.tirePressure = TirePressure.ONE_HUNDRED_PERCENT;
         return nextState;
@@ -147,6 +163,7 @@ public class State {
     public State changeDriver(String newDriver) {
         State nextState = copyState();
         nextState.driver = newDriver;
+        nextState.driverIndex = -1;
         return nextState;
     }
 
@@ -159,6 +176,7 @@ public class State {
     public State changeTires(Tire newTire) {
         State nextState = copyState();
         nextState.tireModel = newTire;
+        nextState.tireIndex = -1;
         nextState.tirePressure = TirePressure.ONE_HUNDRED_PERCENT;
         return nextState;
     }
@@ -226,7 +244,9 @@ public class State {
     public State changeCarAndDriver(String newCarType, String newDriver) {
         State nextState = copyState();
         nextState.carType = newCarType;
+        nextState.carIndex = -1;
         nextState.driver = newDriver;
+        nextState.driverIndex = -1;
         nextState.fuel = ProblemSpec.FUEL_MAX;
         nextState.tirePressure = TirePressure.ONE_HUNDRED_PERCENT;
         return nextState;
@@ -245,6 +265,7 @@ public class State {
                                                TirePressure newTirePressure) {
         State nextState = addFuel(fuelToAdd);
         nextState.tireModel = newTireModel;
+        nextState.tireIndex = -1;
         nextState.tirePressure = newTirePressure;
         return nextState;
     }
@@ -255,8 +276,13 @@ public class State {
      * @return deep copy of current state
      */
     public State copyState() {
-        return new State(pos, slip, breakdown, carType, fuel, tirePressure, driver,
+        State copy = new State(pos, slip, breakdown, carType, fuel, tirePressure, driver,
                 tireModel);
+        copy.terrainIndex = terrainIndex;
+        copy.carIndex = carIndex;
+        copy.driverIndex = driverIndex;
+        copy.tireIndex = tireIndex;
+        return copy;
     }
 
     @Override
@@ -303,4 +329,56 @@ public class State {
     public Tire getTireModel() {
         return tireModel;
     }
+
+    /**
+     * Get the index of the terrain of the cell in the problem's input order
+     *
+     * @param ps the problem the state belongs to
+     * @return the terrain index
+     */
+    public int getTerrainIndex(ProblemSpec ps) {
+        if (terrainIndex < 0) {
+            terrainIndex = ps.getTerrainIndexOfCell(pos);
+        }
+        return terrainIndex;
+    }
+
+    /**
+     * Get the index of the car type in the problem's input order
+     *
+     * @param ps the problem the state belongs to
+     * @return the car index
+     */
+    public int getCarIndex(ProblemSpec ps) {
+        if (carIndex < 0) {
+            carIndex = ps.getCarIndex(carType);
+        }
+        return carIndex;
+    }
+
+    /**
+     * Get the index of the driver in the problem's input order
+     *
+     * @param ps the problem the state belongs to
+     * @return the driver index
+     */
+    public int getDriverIndex(ProblemSpec ps) {
+        if (driverIndex < 0) {
+            driverIndex = ps.getDriverIndex(driver);
+        }
+        return driverIndex;
+    }
+
+    /**
+     * Get the index of the tire model in the problem's input order
+     *
+     * @param ps the problem the state belongs to
+     * @return the tire model index
+     */
+    public int getTireIndex(ProblemSpec ps) {
+        if (tireIndex < 0) {
+            tireIndex = ps.getTireIndex(tireModel);
+        }
+        return tireIndex;
+    }
 }
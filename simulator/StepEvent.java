@@ -0,0 +1,38 @@
+package simulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of one Simulator.step
+ */
+@Name("rtdp.SimulatorStep")
+@Label("Simulator Step")
+@Category({"RTDP", "Simulator"})
+@Description("One action performed against the environment")
+@StackTrace(false)
+class StepEvent extends jdk.jfr.Event {
+
+    @Label("Position")
+    @Description("Cell the car was in before the action")
+    int position;
+
+    @Label("Action Type")
+    @Description("Number of the action, A1 to A8")
+    int actionType;
+
+    @Label("Next Position")
+    @Description("Cell the car is in after the action, -1 if max time steps exceeded")
+    int nextPosition;
+
+    @Label("Steps")
+    @Description("Time steps used so far, including the action")
+    int steps;
+
+    @Label("Headless")
+    @Description("Whether the step was taken on a headless (lookahead or evaluation) simulator")
+    boolean headless;
+}
@@ -0,0 +1,26 @@
+package simulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of writing the step record of an episode to the output file
+ */
+@Name("rtdp.TrajectoryFlush")
+@Label("Trajectory Flush")
+@Category({"RTDP", "Simulator"})
+@Description("The step record of an episode written to the output file")
+class TrajectoryFlushEvent extends jdk.jfr.Event {
+
+    @Label("Output File")
+    String outputFile;
+
+    @Label("Records")
+    @Description("Number of steps written")
+    int records;
+
+    @Label("Goal Reached")
+    boolean goalReached;
+}
@@ -0,0 +1,43 @@
+package simulator;
+
+/**
+ * An immutable class for one possible outcome of performing an action:
+ *
+ *  1. the next state (slip and breakdown already resolved)
+ *  2. the probability of the outcome
+ *  3. the number of steps the outcome takes
+ */
+public class Transition {
+
+    /** The state after the action **/
+    private State nextState;
+    /** The probability of this outcome **/
+    private double probability;
+    /** The number of steps taken **/
+    private int duration;
+
+    /**
+     * Construct a new transition
+     *
+     * @param nextState the state after the action
+     * @param probability the probability of this outcome
+     * @param duration the number of steps taken
+     */
+    public Transition(State nextState, double probability, int duration) {
+        this.nextState = nextState;
+        this.probability = probability;
+        this.duration = duration;
+    }
+
+    public State getNextState() {
+        return nextState;
+    }
+
+    public double getProbability() {
+        return probability;
+    }
+
+    public int getDuration() {
+        return duration;
+    }
+}